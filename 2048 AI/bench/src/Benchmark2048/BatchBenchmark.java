@@ -0,0 +1,68 @@
+package Benchmark2048;
+
+import Game2048.Bitboard2048;
+import Game2048.Heuristic2048;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Heuristic2048 on the afterstates of the corpus, one board at a time and
+ * as one batch, in a batch about the size of a chance node's leaves. Run
+ * with "-jvmArgsAppend -Dgame2048.vector=true" and the vector module on the
+ * class path (and --add-modules jdk.incubator.vector) to measure the SIMD
+ * kernel; otherwise the batch is the scalar loop.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchBenchmark {
+
+    @Param({"16", "64"})
+    public int size;
+
+    private final Heuristic2048 heuristic = Heuristic2048.getDefault();
+    private long[] boards;
+    private double[] scores;
+
+    @Setup
+    public void setUp() {
+        boards = new long[size];
+        scores = new double[size];
+        int count = 0;
+        while (count < size) {
+            for (long board : BenchmarkBoards.MID_GAME) {
+                for (int direction = Bitboard2048.UP; direction <= Bitboard2048.RIGHT && count < size; direction++)
+                    if (Bitboard2048.canMove(board, direction))
+                        boards[count++] = Bitboard2048.move(board, direction);
+            }
+        }
+    }
+
+    @Benchmark
+    public void oneByOne(Blackhole blackhole) {
+        for (int i = 0; i < size; i++)
+            scores[i] = heuristic.evaluate(boards[i]);
+        blackhole.consume(scores);
+    }
+
+    @Benchmark
+    public void batch(Blackhole blackhole) {
+        heuristic.evaluate(boards, size, scores);
+        blackhole.consume(scores);
+    }
+}
@@ -0,0 +1,22 @@
+package Benchmark2048;
+
+/**
+ * Fixed corpus of mid-game packed boards, snapshots of self-play games
+ * after 150 to 600 moves. Kept as literals so that the numbers stay
+ * comparable when the engine changes.
+ */
+final class BenchmarkBoards {
+    static final long[] MID_GAME = {
+            0x0010010003014484L,    // 8 empty, max 256
+            0x0011023445655786L,    // 3 empty, max 256
+            0x1000002210146789L,    // 6 empty, max 512
+            0x001200210641467AL,    // 5 empty, max 1024
+            0x0000000110422458L,    // 8 empty, max 256
+            0x0000001223334659L,    // 6 empty, max 512
+            0x0000012110256897L,    // 6 empty, max 512
+            0x2100245835736489L     // 2 empty, max 512
+    };
+
+    private BenchmarkBoards() {
+    }
+}
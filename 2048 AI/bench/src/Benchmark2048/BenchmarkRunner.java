@@ -0,0 +1,32 @@
+package Benchmark2048;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the 2048 benchmarks headless, with the GC profiler so that every
+ * result comes with its allocation rate (gc.alloc.rate.norm is bytes per
+ * operation).
+ *
+ * Arguments are regular JMH options, e.g. "BoardBenchmark" to run only the
+ * board benchmarks or "-p depth=2,3" to limit the search depths. Run the
+ * Benchmark2048 configuration of the bench module, which compiles the
+ * benchmarks with the JMH annotation processor first.
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        OptionsBuilder builder = new OptionsBuilder();
+        if (commandLine.getIncludes().isEmpty())
+            builder.include(BenchmarkRunner.class.getPackage().getName() + ".");
+        Options options = builder
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
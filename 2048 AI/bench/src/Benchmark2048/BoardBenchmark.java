@@ -0,0 +1,112 @@
+package Benchmark2048;
+
+import Game2048.Bitboard2048;
+import Game2048.Board2048;
+import Game2048.Move2048;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Board level operations on every board of the corpus: one slide per
+ * direction, evaluation, end of game tests, and making a move either as a
+ * new board (moveToNext) or in place (doMove then undoMove).
+ *
+ * Each benchmark walks the whole corpus, so scores are per corpus pass.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardBenchmark {
+
+    private long[] packed;
+    private Board2048[] boards;
+    private final int[] moves = new int[Move2048.MAX_MOVES];
+
+    @State(Scope.Thread)
+    public static class Direction {
+        @Param({"UP", "DOWN", "LEFT", "RIGHT"})
+        public String direction;
+
+        int move;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            move = Move2048.parse(direction);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        packed = BenchmarkBoards.MID_GAME.clone();
+        boards = new Board2048[packed.length];
+        for (int i = 0; i < packed.length; i++)
+            boards[i] = new Board2048(Board2048.AI_PLAYER, packed[i]);
+    }
+
+    @Benchmark
+    public long bitboardMove(Direction direction) {
+        long sum = 0;
+        for (long board : packed)
+            sum += Bitboard2048.move(board, direction.move);
+        return sum;
+    }
+
+    @Benchmark
+    public int possibleMoves() {
+        int sum = 0;
+        for (Board2048 board : boards)
+            sum += board.getPossibleMoves(moves);
+        return sum;
+    }
+
+    @Benchmark
+    public double getScore() {
+        double sum = 0;
+        for (Board2048 board : boards)
+            sum += board.getScore();
+        return sum;
+    }
+
+    @Benchmark
+    public int terminalAndWin() {
+        int sum = 0;
+        for (Board2048 board : boards) {
+            if (board.isTerminal())
+                sum++;
+            if (board.isWin())
+                sum++;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public void moveToNext(Direction direction, Blackhole blackhole) {
+        for (Board2048 board : boards)
+            blackhole.consume(board.moveToNext(direction.move));
+    }
+
+    @Benchmark
+    public void doUndoMove(Direction direction, Blackhole blackhole) {
+        for (Board2048 board : boards) {
+            board.doMove(direction.move);
+            blackhole.consume(board.getToPlay());
+            board.undoMove();
+        }
+    }
+}
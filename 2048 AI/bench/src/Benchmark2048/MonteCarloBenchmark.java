@@ -0,0 +1,66 @@
+package Benchmark2048;
+
+import Game2048.Board2048;
+import Search.MonteCarloAI;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MonteCarloAI move selection on every board of the corpus with a fixed
+ * rollout budget, on 1 to 8 root-parallel workers, to be compared with
+ * SearchBenchmark for alpha-beta and with itself for the scaling over
+ * cores.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class MonteCarloBenchmark {
+
+    @Param({"1000", "4000"})
+    public int rollouts;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    private MonteCarloAI ai;
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ai = new MonteCarloAI(new Board2048(Board2048.AI_PLAYER, 0L));
+        if (threads > 1) {
+            pool = new ForkJoinPool(threads);
+            ai.setPool(pool);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (pool != null)
+            pool.shutdown();
+    }
+
+    @Benchmark
+    public void getBestDirection(Blackhole blackhole) {
+        for (long board : BenchmarkBoards.MID_GAME)
+            blackhole.consume(ai.getBestDirection(board, rollouts, 0));
+    }
+}
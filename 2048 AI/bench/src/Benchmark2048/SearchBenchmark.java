@@ -0,0 +1,51 @@
+package Benchmark2048;
+
+import Game2048.Board2048;
+import Search.MiniMaxAlphaBetaAI;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A full MiniMaxAlphaBetaAI.getNextMove on every board of the corpus, from
+ * a fresh AI each time so that no search tree is reused between calls,
+ * and the same search made in place with doMove/undoMove.
+ * Depth 5 takes seconds per pass, hence the short runs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+
+    @Param({"2", "3", "4", "5"})
+    public int depth;
+
+    @Benchmark
+    public void getNextMove(Blackhole blackhole) {
+        for (long board : BenchmarkBoards.MID_GAME) {
+            MiniMaxAlphaBetaAI ai = new MiniMaxAlphaBetaAI(new Board2048(Board2048.AI_PLAYER, board));
+            blackhole.consume(ai.getNextMove(null, depth));
+        }
+    }
+
+    @Benchmark
+    public void getNextMoveInPlace(Blackhole blackhole) {
+        for (long board : BenchmarkBoards.MID_GAME) {
+            MiniMaxAlphaBetaAI ai = new MiniMaxAlphaBetaAI(new Board2048(Board2048.AI_PLAYER, board));
+            blackhole.consume(ai.getNextMoveInPlace(null, depth));
+        }
+    }
+}
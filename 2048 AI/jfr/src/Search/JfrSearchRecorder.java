@@ -0,0 +1,33 @@
+package Search;
+
+/**
+ * SearchRecorder committing a SearchEvent per move.
+ *
+ * Loaded by SearchStats through reflection; needs JDK 11 or later both to
+ * build and to run.
+ */
+final class JfrSearchRecorder implements SearchRecorder {
+
+    @Override
+    public Object begin() {
+        SearchEvent event = new SearchEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void end(Object begun, String engine, SearchStats.Snapshot move) {
+        SearchEvent event = (SearchEvent) begun;
+        event.end();
+        if (event.shouldCommit()) {
+            event.engine = engine;
+            event.depth = move.getDepth();
+            event.nodes = move.getNodes();
+            event.evaluations = move.getEvaluations();
+            event.cacheHits = move.getCacheHits();
+            event.cacheMisses = move.getCacheMisses();
+            event.cutoffs = move.getCutoffs();
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package Search;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event of one move chosen by a search engine, committed by
+ * JfrSearchRecorder. Its duration is the time the move took.
+ */
+@Name("Search2048.Search")
+@Label("Search")
+@Category("2048 AI")
+@Description("One move chosen by a search engine")
+@StackTrace(false)
+class SearchEvent extends Event {
+    @Label("Engine")
+    String engine;
+
+    @Label("Depth")
+    int depth;
+
+    @Label("Nodes")
+    long nodes;
+
+    @Label("Evaluations")
+    long evaluations;
+
+    @Label("Cache Hits")
+    long cacheHits;
+
+    @Label("Cache Misses")
+    long cacheMisses;
+
+    @Label("Cutoffs")
+    long cutoffs;
+}
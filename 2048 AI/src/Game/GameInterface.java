@@ -1,27 +1,38 @@
-package Game;
-
-import java.util.List;
-
-/**
- * Created by gejing on 3/6/14.
- */
-public interface GameInterface {
-
-	public String getToPlay();
-
-	public Double getScore();
-
-	public List<MoveInterface<?>> getPossibleMoves();
-
-	public GameInterface moveToNext(MoveInterface<?> move);
-
-	public void doMove(MoveInterface<?> move);
-
-	public void undoMove();
-
-	public boolean isTerminal();
-
-	public boolean isDraw();
-
-	public boolean isWin();
-}
+package Game;
+
+import java.util.List;
+
+/**
+ * Created by gejing on 3/6/14.
+ */
+public interface GameInterface {
+
+	public String getToPlay();
+
+	public Double getScore();
+
+	public List<MoveInterface<?>> getPossibleMoves();
+
+	/**
+	 * Allocation-free move generation: fill the buffer with the int codes of
+	 * the possible moves and return how many there are. The moves come in the
+	 * same order as in getPossibleMoves().
+	 */
+	public int getPossibleMoves(int[] moves);
+
+	public GameInterface moveToNext(MoveInterface<?> move);
+
+	public GameInterface moveToNext(int move);
+
+	public void doMove(MoveInterface<?> move);
+
+	public void doMove(int move);
+
+	public void undoMove();
+
+	public boolean isTerminal();
+
+	public boolean isDraw();
+
+	public boolean isWin();
+}
@@ -0,0 +1,86 @@
+package Game2048;
+
+import Search.ExpectimaxAI;
+
+import javax.swing.SwingUtilities;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Plays Game2048 with ExpectimaxAI without blocking the Swing event thread.
+ *
+ * Searches run one at a time on a dedicated thread that keeps the same AI,
+ * and so its transposition table, from one move to the next. Each answer is
+ * applied to the game on the event thread, which then asks for the next move.
+ * Apart from the constructor, methods must be called on the event thread.
+ */
+public class AIDriver2048 {
+    private final Game2048 game;
+    private final ExpectimaxAI ai;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "2048 AI");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // bumped on stop and reset, so that answers to older requests are dropped
+    private int generation;
+    private boolean running;
+
+    public AIDriver2048(Game2048 game, ExpectimaxAI ai) {
+        this.game = game;
+        this.ai = ai;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Keep playing until the game is won or lost, or stop() is called.
+     */
+    public void start() {
+        if (running)
+            return;
+        running = true;
+        requestMove();
+    }
+
+    public void stop() {
+        running = false;
+        generation++;
+    }
+
+    /**
+     * Stop and forget the cached positions, for a new game.
+     */
+    public void reset() {
+        stop();
+        executor.execute(() -> ai.reset(new Board2048(Board2048.AI_PLAYER, 0L)));
+    }
+
+    private void requestMove() {
+        if (!running || game.isOver()) {
+            running = false;
+            return;
+        }
+        final long board = game.getPackedState();
+        final int request = generation;
+        executor.execute(() -> {
+            int direction = ai.getBestDirection(board, ai.chooseDepth(board));
+            SwingUtilities.invokeLater(() -> moveChosen(request, board, direction));
+        });
+    }
+
+    private void moveChosen(int request, long board, int direction) {
+        if (request != generation)
+            return;
+        if (direction < 0) {
+            running = false;
+            return;
+        }
+        // a key pressed during the search has changed the board, search it again
+        if (game.getPackedState() == board)
+            game.applyMove(direction);
+        requestMove();
+    }
+}
@@ -0,0 +1,13 @@
+package Game2048;
+
+/**
+ * Heuristic2048.evaluate(long[], int, double[]) on SIMD lanes. The
+ * implementation, VectorHeuristic2048, lives in the vector module and uses
+ * jdk.incubator.vector (JDK 16 and later, run with --add-modules
+ * jdk.incubator.vector); it is looked up at run time, so the game still
+ * builds and runs on Java 8 without it.
+ */
+interface BatchKernel2048 {
+
+    void evaluate(Heuristic2048 heuristic, long[] boards, int count, double[] scores);
+}
@@ -0,0 +1,247 @@
+package Game2048;
+
+import java.util.Random;
+
+/**
+ * Packed 4x4 board: every tile is stored as a 4-bit exponent (0 for an empty
+ * cell, k for a tile of value 2^k) inside a single long.
+ *
+ * Cell (i, j) lives in nibble 4 * i + j, so row i is the 16-bit word
+ * (board >>> 16 * i) & 0xFFFF and cell j of a row is its j-th nibble.
+ * The largest representable tile is 2^15 = 32768; two 32768 tiles are
+ * left unmerged.
+ */
+public final class Bitboard2048 {
+
+    // directions, in the same order as Board2048.MOVES_DIRECTION
+    public static final int UP = 0;
+    public static final int DOWN = 1;
+    public static final int LEFT = 2;
+    public static final int RIGHT = 3;
+
+    public static final int CELLS = 16;
+    public static final int WIN_EXPONENT = 11;   // 2048
+    public static final int MAX_EXPONENT = 15;
+
+    private static final long ROW_MASK = 0xFFFFL;
+
+    private Bitboard2048() {
+    }
+
+    public static long fromArray(int[][] board) {
+        long packed = 0;
+        for (int i = 0; i < 4; i++)
+            for (int j = 0; j < 4; j++)
+                packed |= (long) exponentOf(board[i][j]) << (4 * (4 * i + j));
+        return packed;
+    }
+
+    public static int[][] toArray(long board) {
+        int[][] array = new int[4][4];
+        for (int i = 0; i < 4; i++)
+            for (int j = 0; j < 4; j++)
+                array[i][j] = valueOf(getCell(board, 4 * i + j));
+        return array;
+    }
+
+    public static int exponentOf(int value) {
+        if (value <= 0)
+            return 0;
+        int exponent = Integer.numberOfTrailingZeros(value);
+        if (exponent > MAX_EXPONENT || Integer.bitCount(value) != 1)
+            throw new IllegalArgumentException("Not a packable tile: " + value);
+        return exponent;
+    }
+
+    public static int valueOf(int exponent) {
+        return exponent == 0 ? 0 : 1 << exponent;
+    }
+
+    public static int getCell(long board, int cell) {
+        return (int) (board >>> (4 * cell)) & 0xF;
+    }
+
+    public static int getRow(long board, int row) {
+        return (int) ((board >>> (16 * row)) & ROW_MASK);
+    }
+
+    public static long spawn(long board, int cell, int exponent) {
+        return board | ((long) exponent << (4 * cell));
+    }
+
+    /**
+     * Spawn a tile like the real game does: a 2 (or a 4 with probability 0.1)
+     * on an empty cell picked uniformly at random.
+     */
+    public static long spawnRandom(long board, Random random) {
+        int empty = countEmpty(board);
+        if (empty == 0)
+            return board;
+        int index = random.nextInt(empty);
+        int exponent = random.nextDouble() < 0.9 ? 1 : 2;
+        for (int cell = 0; cell < CELLS; cell++) {
+            if (getCell(board, cell) == 0 && index-- == 0)
+                return spawn(board, cell, exponent);
+        }
+        return board;
+    }
+
+    public static int countEmpty(long board) {
+        int empty = 0;
+        for (int cell = 0; cell < CELLS; cell++)
+            if (getCell(board, cell) == 0)
+                empty++;
+        return empty;
+    }
+
+    public static int maxExponent(long board) {
+        int max = 0;
+        for (int cell = 0; cell < CELLS; cell++)
+            max = Math.max(max, getCell(board, cell));
+        return max;
+    }
+
+    /**
+     * Swap rows and columns, so that column moves can reuse the row code.
+     */
+    public static long transpose(long board) {
+        long a1 = board & 0xF0F00F0FF0F00F0FL;
+        long a2 = board & 0x0000F0F00000F0F0L;
+        long a3 = board & 0x0F0F00000F0F0000L;
+        long a = a1 | (a2 << 12) | (a3 >>> 12);
+        long b1 = a & 0xFF00FF0000FF00FFL;
+        long b2 = a & 0x00FF00FF00000000L;
+        long b3 = a & 0x00000000FF00FF00L;
+        return b1 | (b2 >>> 24) | (b3 << 24);
+    }
+
+    /**
+     * Apply one of the 8 symmetries of the square. Bit 2 of the symmetry
+     * transposes the board, then bit 0 mirrors it left to right and bit 1
+     * mirrors it top to bottom.
+     */
+    public static long transform(long board, int symmetry) {
+        if ((symmetry & 4) != 0)
+            board = transpose(board);
+        if ((symmetry & 1) != 0)
+            board = ((board & 0x000F000F000F000FL) << 12) | ((board & 0x00F000F000F000F0L) << 4)
+                    | ((board >>> 4) & 0x00F000F000F000F0L) | ((board >>> 12) & 0x000F000F000F000FL);
+        if ((symmetry & 2) != 0)
+            board = (board << 48) | ((board & 0xFFFF0000L) << 16)
+                    | ((board >>> 16) & 0xFFFF0000L) | (board >>> 48);
+        return board;
+    }
+
+    /**
+     * @return the direction that does on transform(board, symmetry) what
+     * direction does on board
+     */
+    public static int transformDirection(int direction, int symmetry) {
+        if ((symmetry & 4) != 0)
+            direction ^= 2;     // UP <-> LEFT, DOWN <-> RIGHT
+        if ((symmetry & 1) != 0 && direction >= LEFT)
+            direction ^= 1;     // LEFT <-> RIGHT
+        if ((symmetry & 2) != 0 && direction <= DOWN)
+            direction ^= 1;     // UP <-> DOWN
+        return direction;
+    }
+
+    /**
+     * Inverse of transformDirection: map a direction on the transformed board
+     * back to the original one.
+     */
+    public static int inverseTransformDirection(int direction, int symmetry) {
+        if ((symmetry & 2) != 0 && direction <= DOWN)
+            direction ^= 1;
+        if ((symmetry & 1) != 0 && direction >= LEFT)
+            direction ^= 1;
+        if ((symmetry & 4) != 0)
+            direction ^= 2;
+        return direction;
+    }
+
+    /**
+     * @return the symmetry giving the smallest transformed board, which is the
+     * same for all 8 symmetric positions
+     */
+    public static int canonicalSymmetry(long board) {
+        int best = 0;
+        long min = board;
+        for (int symmetry = 1; symmetry < 8; symmetry++) {
+            long transformed = transform(board, symmetry);
+            if (transformed < min) {
+                min = transformed;
+                best = symmetry;
+            }
+        }
+        return best;
+    }
+
+    public static long move(long board, int direction) {
+        switch (direction) {
+            case UP:
+                return transpose(slideRows(transpose(board), true));
+            case DOWN:
+                return transpose(slideRows(transpose(board), false));
+            case LEFT:
+                return slideRows(board, true);
+            case RIGHT:
+                return slideRows(board, false);
+            default:
+                throw new IllegalArgumentException("Unknown direction: " + direction);
+        }
+    }
+
+    public static boolean canMove(long board, int direction) {
+        switch (direction) {
+            case UP:
+                return rowsCanSlide(transpose(board), true);
+            case DOWN:
+                return rowsCanSlide(transpose(board), false);
+            case LEFT:
+                return rowsCanSlide(board, true);
+            case RIGHT:
+                return rowsCanSlide(board, false);
+            default:
+                throw new IllegalArgumentException("Unknown direction: " + direction);
+        }
+    }
+
+    public static boolean isTerminal(long board) {
+        long transposed = transpose(board);
+        return !rowsCanSlide(board, true) && !rowsCanSlide(board, false)
+                && !rowsCanSlide(transposed, true) && !rowsCanSlide(transposed, false);
+    }
+
+    public static boolean isWin(long board) {
+        return maxExponent(board) >= WIN_EXPONENT;
+    }
+
+    /**
+     * @return the points a move in the given direction scores, i.e. the sum of
+     * the merged tiles, as shown in the Game2048 panel
+     */
+    public static int moveScore(long board, int direction) {
+        boolean left = direction == LEFT || direction == UP;
+        long rows = direction == UP || direction == DOWN ? transpose(board) : board;
+        int[] table = left ? RowTable2048.SCORE_LEFT : RowTable2048.SCORE_RIGHT;
+        return table[getRow(rows, 0)] + table[getRow(rows, 1)]
+                + table[getRow(rows, 2)] + table[getRow(rows, 3)];
+    }
+
+    private static long slideRows(long board, boolean left) {
+        char[] table = left ? RowTable2048.LEFT : RowTable2048.RIGHT;
+        return (long) table[(int) (board & ROW_MASK)]
+                | (long) table[(int) ((board >>> 16) & ROW_MASK)] << 16
+                | (long) table[(int) ((board >>> 32) & ROW_MASK)] << 32
+                | (long) table[(int) (board >>> 48)] << 48;
+    }
+
+    private static boolean rowsCanSlide(long board, boolean left) {
+        boolean[] table = left ? RowTable2048.CHANGED_LEFT : RowTable2048.CHANGED_RIGHT;
+        return table[(int) (board & ROW_MASK)]
+                || table[(int) ((board >>> 16) & ROW_MASK)]
+                || table[(int) ((board >>> 32) & ROW_MASK)]
+                || table[(int) (board >>> 48)];
+    }
+}
@@ -0,0 +1,174 @@
+package Game2048;
+
+import Game.GameInterface;
+import Game.MoveInterface;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EmptyStackException;
+import java.util.List;
+
+/**
+ * Board2048 for any Variant2048: the same players, moves and search
+ * conventions on a packed long[] board, so MiniMaxAlphaBetaAI plays it
+ * unchanged. Moves use the Move2048 codes, with cells numbered
+ * size * row + column.
+ *
+ * Like Board2048, doMove() saves the packed board on a primitive history,
+ * so making and unmaking moves does not allocate once it has grown.
+ */
+public class BoardNxN implements GameInterface {
+    private static final int INITIAL_HISTORY = 32;
+
+    private final Variant2048 variant;
+    private final long[] board;
+    private boolean aiToPlay;
+    // boards before each doMove() not undone yet, words() longs each
+    private long[] history;
+    private int historySize;
+    // null for HeuristicNxN.getDefault(), passed on to the boards moveToNext creates
+    private HeuristicNxN heuristic;
+
+    public BoardNxN(Variant2048 variant, String player, int[][] values) {
+        this(variant, Board2048.AI_PLAYER.equals(player), variant.fromArray(values));
+    }
+
+    private BoardNxN(Variant2048 variant, boolean aiToPlay, long[] board) {
+        this.variant = variant;
+        this.aiToPlay = aiToPlay;
+        this.board = board;
+    }
+
+    public Variant2048 getVariant() {
+        return variant;
+    }
+
+    /**
+     * @return a copy of the packed board
+     */
+    public long[] toPacked() {
+        return board.clone();
+    }
+
+    public int[][] toArray() {
+        return variant.toArray(board);
+    }
+
+    /**
+     * @return the Move2048 code of a move object
+     */
+    public int codeOf(MoveInterface<?> move) {
+        if (move instanceof MoveOrAdd)
+            return ((MoveOrAdd) move).getCode();
+        return Move2048.parse(move.getMove().toString(), variant.getSize());
+    }
+
+    public void setHeuristic(HeuristicNxN heuristic) {
+        this.heuristic = heuristic;
+    }
+
+    @Override
+    public String getToPlay() {
+        return aiToPlay ? Board2048.AI_PLAYER : Board2048.COMPUTER;
+    }
+
+    @Override
+    public Double getScore() {
+        HeuristicNxN heuristic = this.heuristic != null ? this.heuristic : HeuristicNxN.getDefault(variant);
+        return heuristic.evaluate(board);
+    }
+
+    @Override
+    public List<MoveInterface<?>> getPossibleMoves() {
+        int[] moves = new int[variant.maxMoves()];
+        int count = getPossibleMoves(moves);
+        List<MoveInterface<?>> nextMoves = new ArrayList<MoveInterface<?>>(count);
+        for (int i = 0; i < count; i++)
+            nextMoves.add(new MoveOrAdd(moves[i], variant.getSize()));
+        return nextMoves;
+    }
+
+    @Override
+    public int getPossibleMoves(int[] moves) {
+        int count = 0;
+        if (!isTerminal()) {
+            if (aiToPlay) {
+                for (int direction = Bitboard2048.UP; direction <= Bitboard2048.RIGHT; direction++)
+                    if (variant.canMove(board, direction))
+                        moves[count++] = direction;
+            } else {
+                // the computer only adds tiles on the border, as in Board2048
+                int size = variant.getSize();
+                for (int cell = 0; cell < variant.cells(); cell++) {
+                    int i = cell / size, j = cell % size;
+                    if (variant.getCell(board, cell) == 0 && (i == 0 || j == 0 || i == size - 1 || j == size - 1)) {
+                        moves[count++] = Move2048.spawn(cell, 1);
+                        moves[count++] = Move2048.spawn(cell, 2);
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public GameInterface moveToNext(MoveInterface<?> move) {
+        return moveToNext(codeOf(move));
+    }
+
+    @Override
+    public GameInterface moveToNext(int move) {
+        long[] next = board.clone();
+        transfer(next, move);
+        BoardNxN nextBoard = new BoardNxN(variant, !aiToPlay, next);
+        nextBoard.heuristic = this.heuristic;
+        return nextBoard;
+    }
+
+    @Override
+    public void doMove(MoveInterface<?> move) {
+        doMove(codeOf(move));
+    }
+
+    @Override
+    public void doMove(int move) {
+        int words = board.length;
+        if (history == null)
+            history = new long[INITIAL_HISTORY * words];
+        else if ((historySize + 1) * words > history.length)
+            history = Arrays.copyOf(history, 2 * history.length);
+        System.arraycopy(board, 0, history, historySize++ * words, words);
+        transfer(board, move);
+        aiToPlay = !aiToPlay;
+    }
+
+    @Override
+    public void undoMove() {
+        if (historySize == 0)
+            throw new EmptyStackException();
+        System.arraycopy(history, --historySize * board.length, board, 0, board.length);
+        aiToPlay = !aiToPlay;
+    }
+
+    @Override
+    public boolean isTerminal() {
+        return variant.countEmpty(board) == 0 && variant.isTerminal(board);
+    }
+
+    @Override
+    public boolean isDraw() {
+        return false;
+    }
+
+    @Override
+    public boolean isWin() {
+        return variant.isWin(board);
+    }
+
+    private void transfer(long[] board, int move) {
+        if (Move2048.isSpawn(move))
+            variant.setCell(board, Move2048.cellOf(move), Move2048.exponentOf(move));
+        else
+            variant.move(board, Move2048.directionOf(move));
+    }
+}
@@ -0,0 +1,21 @@
+package Game2048;
+
+/**
+ * Scores packed 2048 boards for the search. Won boards score
+ * Double.MAX_VALUE and lost ones -Double.MAX_VALUE, like Board2048.getScore().
+ */
+public interface Evaluator2048 {
+
+    public double evaluate(long board);
+
+    /**
+     * Score boards[0..count) into scores[0..count), the same values as
+     * evaluate(long) one board at a time. Evaluators that can score several
+     * boards together, such as Heuristic2048 with the vector module, override
+     * this.
+     */
+    public default void evaluate(long[] boards, int count, double[] scores) {
+        for (int i = 0; i < count; i++)
+            scores[i] = evaluate(boards[i]);
+    }
+}
@@ -16,13 +16,14 @@
 
 package Game2048;
 
-import Game.MoveInterface;
-import Search.MiniMaxAlphaBetaAI;
+import Search.ExpectimaxAI;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
@@ -44,25 +45,30 @@ public class Game2048 extends JPanel {
   private static final String FONT_NAME = "Arial";
   private static final int TILE_SIZE = 64;
   private static final int TILES_MARGIN = 16;
-
-  private static final int direction[] = {KeyEvent.VK_UP, KeyEvent.VK_DOWN,
-          KeyEvent.VK_LEFT, KeyEvent.VK_RIGHT};
-  private static final String MOVES_DIRECTION[] = {"UP", "DOWN", "LEFT", "RIGHT"};
+  // the board is repainted at most this many times per second
+  private static final int FRAME_RATE = 30;
 
   private Tile[] myTiles;
   boolean myWin = false;
   boolean myLose = false;
   int myScore = 0;
-  Board2048 board;
-  MiniMaxAlphaBetaAI AI;
+  // set when the board changed since the last repaint
+  boolean dirty = true;
+  AIDriver2048 driver;
 
 
   public Game2048() {
+    this(new ExpectimaxAI(new Board2048(Board2048.AI_PLAYER, 0L)));
+  }
+
+  public Game2048(ExpectimaxAI ai) {
+    driver = new AIDriver2048(this, ai);
     setFocusable(true);
     addKeyListener(new KeyAdapter() {
       @Override
       public void keyPressed(KeyEvent e) {
         if (e.getKeyCode() == KeyEvent.VK_ESCAPE) {
+          driver.reset();
           resetGame();
         }
         if (!canMove()) {
@@ -91,9 +97,9 @@ public class Game2048 extends JPanel {
           myLose = true;
         }
 
-        repaint();
-        if(useAI) {
-          makeMove();
+        dirty = true;
+        if (useAI && e.getKeyCode() != KeyEvent.VK_ESCAPE) {
+          driver.start();
         }
 
       }
@@ -101,40 +107,44 @@ public class Game2048 extends JPanel {
 
     resetGame();
 
-  }
-
-  public void makeMove() {
-    try {
-      Robot robot = new Robot();
-      int[][] b = getState();
-
-      // 've added board and AI in the constructor of Game2048
-      board = new Board2048(Board2048.AI_PLAYER, getState());
-      AI = new MiniMaxAlphaBetaAI(board);
-      MoveInterface<?> move;
-      move = AI.getNextMove(new MoveOrAdd(Integer.toString(b[0][0]) + " " +
-              Integer.toString(0) + " " +
-              Integer.toString(0)
-      ));
-
-      //move = MMAB_AI.getMove(board);
-
-      for(int k = 0; k < 4; k++)
-        if(move.getMove().equals(MOVES_DIRECTION[k])){
-          robot.keyPress(direction[k]);
-          robot.keyRelease(direction[k]);
-        }
-
-      try {
-        Thread.sleep(10);
-      } catch (InterruptedException e2){
-
+    new Timer(1000 / FRAME_RATE, e -> {
+      if (dirty) {
+        dirty = false;
+        repaint();
       }
+    }).start();
+  }
 
-    } catch (AWTException e1) {
-      e1.printStackTrace();
+  /**
+   * Play one Bitboard2048 direction, as if its arrow key was pressed.
+   */
+  public void applyMove(int direction) {
+    switch (direction) {
+      case Bitboard2048.UP:
+        up();
+        break;
+      case Bitboard2048.DOWN:
+        down();
+        break;
+      case Bitboard2048.LEFT:
+        left();
+        break;
+      case Bitboard2048.RIGHT:
+        right();
+        break;
+    }
+    if (!myWin && !canMove()) {
+      myLose = true;
     }
+    dirty = true;
+  }
+
+  public boolean isOver() {
+    return myWin || myLose || !canMove();
+  }
 
+  public long getPackedState() {
+    return Bitboard2048.fromArray(getState());
   }
 
   public void resetGame() {
@@ -147,6 +157,7 @@ public class Game2048 extends JPanel {
     }
     addTile();
     addTile();
+    dirty = true;
   }
 
   public int[][] getState() {
@@ -429,13 +440,20 @@ public class Game2048 extends JPanel {
     }
   }
 
-  public static void main(String[] args) {
+  /**
+   * An optional argument names a HeuristicWeights file for the AI, e.g. one
+   * written by HeuristicTuner.
+   */
+  public static void main(String[] args) throws IOException {
+    ExpectimaxAI ai = new ExpectimaxAI(new Board2048(Board2048.AI_PLAYER, 0L));
+    if (args.length > 0)
+      ai.setEvaluator(new Heuristic2048(HeuristicWeights.load(Paths.get(args[0]))));
     JFrame game = new JFrame();
     game.setTitle("2048 Game");
     game.setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
     game.setSize(340, 400);
     game.setResizable(false);
-    game.add(new Game2048());
+    game.add(new Game2048(ai));
     game.setLocationRelativeTo(null);
     game.setVisible(true);
   }
@@ -0,0 +1,114 @@
+package Game2048;
+
+import java.util.Arrays;
+
+/**
+ * One game in the compact binary form of GameRecordWriter: the seed, the
+ * starting tiles, and for every turn the direction played, the tile that
+ * spawned after it, the depth the search reached and the time the move
+ * took. A turn takes three or four bytes.
+ *
+ * Encoding of a game (after the varint length that GameRecordWriter puts in
+ * front of it):
+ * <pre>
+ *   long    seed (big endian)
+ *   byte    number of starting tiles, then one byte per tile:
+ *           cell | exponent &lt;&lt; 4
+ *   varint  number of turns, then per turn:
+ *     byte    direction | spawn cell &lt;&lt; 2 | (spawn exponent - 1) &lt;&lt; 6
+ *             | 0x80 if a tile spawned (the last turn of a game may have none)
+ *     byte    depth the search reached
+ *     varint  move time in microseconds
+ * </pre>
+ * Varints are unsigned LEB128, 7 bits per byte. A record is reused from one
+ * game to the next with start().
+ */
+public final class GameRecord2048 {
+    static final int SPAWNED = 0x80;
+
+    private byte[] bytes = new byte[256];
+    private int length;
+    private int turns;
+    // where the turn count goes, it is only known once the game is over
+    private int turnsOffset;
+
+    /**
+     * Start recording a new game, forgetting the previous one.
+     */
+    public void start(long seed, long board) {
+        length = 0;
+        turns = 0;
+        for (int shift = 56; shift >= 0; shift -= 8)
+            put((int) (seed >>> shift));
+        put(Bitboard2048.CELLS - Bitboard2048.countEmpty(board));
+        for (int cell = 0; cell < Bitboard2048.CELLS; cell++) {
+            int exponent = Bitboard2048.getCell(board, cell);
+            if (exponent != 0)
+                put(cell | exponent << 4);
+        }
+        turnsOffset = length;
+    }
+
+    /**
+     * @param moved   the board right after the move
+     * @param spawned the board after the computer's tile, equal to moved if
+     *                no tile spawned
+     */
+    public void turn(int direction, int depth, long nanos, long moved, long spawned) {
+        int code = direction;
+        long added = moved ^ spawned;
+        if (added != 0) {
+            int cell = Long.numberOfTrailingZeros(added) / 4;
+            code |= SPAWNED | cell << 2 | (Bitboard2048.getCell(spawned, cell) - 1) << 6;
+        }
+        put(code);
+        put(Math.min(depth, 0xFF));
+        putVarint(nanos / 1000);
+        turns++;
+    }
+
+    public int getTurns() {
+        return turns;
+    }
+
+    /**
+     * @return the encoded game, the turn count inserted in front of the turns
+     */
+    byte[] encode() {
+        int countBytes = varintSize(turns);
+        byte[] encoded = new byte[length + countBytes];
+        System.arraycopy(bytes, 0, encoded, 0, turnsOffset);
+        int at = turnsOffset;
+        long value = turns;
+        while (value >= 0x80) {
+            encoded[at++] = (byte) (value | 0x80);
+            value >>>= 7;
+        }
+        encoded[at] = (byte) value;
+        System.arraycopy(bytes, turnsOffset, encoded, turnsOffset + countBytes, length - turnsOffset);
+        return encoded;
+    }
+
+    static int varintSize(long value) {
+        int size = 1;
+        while (value >= 0x80) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private void putVarint(long value) {
+        while (value >= 0x80) {
+            put((int) (value | 0x80));
+            value >>>= 7;
+        }
+        put((int) value);
+    }
+
+    private void put(int b) {
+        if (length == bytes.length)
+            bytes = Arrays.copyOf(bytes, 2 * length);
+        bytes[length++] = (byte) b;
+    }
+}
@@ -0,0 +1,95 @@
+package Game2048;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Statistics over GameRecordWriter logs, read as a stream: win rate and
+ * scores, where the lost games were lost (largest tile, turn, and whether
+ * that tile had left its corner), the depths the searches actually reached
+ * and the time per move, overall and per depth.
+ *
+ * Usage: GameRecordAnalyzer file...
+ */
+public class GameRecordAnalyzer implements GameRecordReader.Visitor {
+    private long games;
+    private long wins;
+    private long turns;
+    private long scoreSum;
+    private int maxScore;
+    private final TreeMap<Integer, Long> lossTiles = new TreeMap<Integer, Long>();
+    private long losses;
+    private long lossTurnSum;
+    private int firstLossTurn = Integer.MAX_VALUE;
+    private int lastLossTurn;
+    private long lossesOffCorner;
+    private final long[] depthCounts = new long[256];
+    private final long[] depthMicros = new long[256];
+    private final Simulator2048.LatencyHistogram latencies = new Simulator2048.LatencyHistogram();
+
+    @Override
+    public void turn(long board, int direction, int depth, long micros, long next) {
+        depthCounts[depth]++;
+        depthMicros[depth] += micros;
+        latencies.record(micros * 1000);
+    }
+
+    @Override
+    public void endGame(long board, int score, int turns) {
+        games++;
+        this.turns += turns;
+        scoreSum += score;
+        maxScore = Math.max(maxScore, score);
+        int max = Bitboard2048.maxExponent(board);
+        if (Bitboard2048.isWin(board)) {
+            wins++;
+            return;
+        }
+        losses++;
+        lossTurnSum += turns;
+        firstLossTurn = Math.min(firstLossTurn, turns);
+        lastLossTurn = Math.max(lastLossTurn, turns);
+        lossTiles.merge(Bitboard2048.valueOf(max), 1L, Long::sum);
+        if (Bitboard2048.getCell(board, 0) != max && Bitboard2048.getCell(board, 3) != max
+                && Bitboard2048.getCell(board, 12) != max && Bitboard2048.getCell(board, 15) != max)
+            lossesOffCorner++;
+    }
+
+    public void report() {
+        if (games == 0) {
+            System.out.println("no games");
+            return;
+        }
+        System.out.printf("games: %d, turns: %d%n", games, turns);
+        System.out.printf("win rate: %.2f%% (%d/%d)%n", 100.0 * wins / games, wins, games);
+        System.out.printf("score: mean %.0f, max %d%n", (double) scoreSum / games, maxScore);
+        if (losses > 0) {
+            System.out.println("largest tile of lost games:");
+            for (Map.Entry<Integer, Long> entry : lossTiles.descendingMap().entrySet())
+                System.out.printf("  %6d: %6.2f%%%n", entry.getKey(), 100.0 * entry.getValue() / losses);
+            System.out.printf("lost at turn: mean %.0f, first %d, last %d%n",
+                    (double) lossTurnSum / losses, firstLossTurn, lastLossTurn);
+            System.out.printf("largest tile off the corners when lost: %.2f%%%n", 100.0 * lossesOffCorner / losses);
+        }
+        System.out.println("depth reached: moves, mean time");
+        for (int depth = 0; depth < depthCounts.length; depth++) {
+            if (depthCounts[depth] > 0)
+                System.out.printf("  %3d: %6.2f%%, %.3f ms%n", depth, 100.0 * depthCounts[depth] / turns,
+                        depthMicros[depth] / 1e3 / depthCounts[depth]);
+        }
+        System.out.printf("move time: p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, p99.9 %.3f ms%n",
+                latencies.percentile(50) / 1e6, latencies.percentile(90) / 1e6,
+                latencies.percentile(99) / 1e6, latencies.percentile(99.9) / 1e6);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0)
+            throw new IllegalArgumentException("Usage: GameRecordAnalyzer file...");
+        GameRecordAnalyzer analyzer = new GameRecordAnalyzer();
+        for (String file : args)
+            GameRecordReader.read(Paths.get(file), analyzer);
+        analyzer.report();
+    }
+}
@@ -0,0 +1,179 @@
+package Game2048;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Streams the games of a GameRecordWriter log, replaying every turn on a
+ * packed board and handing the positions to a Visitor. Nothing is kept from
+ * one game to the next, so logs of millions of games are read in constant
+ * memory. A truncated last game (a writer that died mid-game) is skipped;
+ * any other damage, including a bad game length, is an IOException naming
+ * the corrupt record.
+ */
+public class GameRecordReader {
+    // no game comes near this; a longer length is a misframed or garbage record
+    static final int MAX_GAME_BYTES = 1 << 24;
+
+    /**
+     * Callbacks for the replayed games, in file order.
+     */
+    public interface Visitor {
+        default void startGame(long seed, long board) {
+        }
+
+        /**
+         * @param board     the board the move was played on
+         * @param direction the Bitboard2048 direction played
+         * @param depth     the depth the search of the move reached
+         * @param micros    the time the move took
+         * @param next      the board after the move and the spawned tile
+         */
+        default void turn(long board, int direction, int depth, long micros, long next) {
+        }
+
+        /**
+         * @param board the final board, won or without a move left
+         * @param score the points of all the merges, as shown in the Game2048 panel
+         */
+        default void endGame(long board, int score, int turns) {
+        }
+    }
+
+    private GameRecordReader() {
+    }
+
+    /**
+     * @return the number of games read
+     */
+    public static long read(Path path, Visitor visitor) throws IOException {
+        long games = 0;
+        byte[] buffer = new byte[1 << 12];
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            GameRecordWriter.readHeader(in, path);
+            while (true) {
+                int first = in.read();
+                if (first < 0)
+                    break;
+                int length;
+                try {
+                    length = readLength(in, first, games);
+                    if (length > buffer.length)
+                        buffer = new byte[Math.max(length, 2 * buffer.length)];
+                    in.readFully(buffer, 0, length);
+                } catch (EOFException e) {
+                    break;
+                }
+                replay(buffer, length, visitor, games);
+                games++;
+            }
+        }
+        return games;
+    }
+
+    private static void replay(byte[] bytes, int length, Visitor visitor, long game) throws IOException {
+        Cursor cursor = new Cursor(bytes, length, game);
+        long seed = 0;
+        for (int k = 0; k < 8; k++)
+            seed = seed << 8 | cursor.next();
+        long board = 0;
+        int tiles = cursor.next();
+        for (int k = 0; k < tiles; k++) {
+            int tile = cursor.next();
+            board = Bitboard2048.spawn(board, tile & 0xF, tile >>> 4);
+        }
+        visitor.startGame(seed, board);
+
+        int score = 0;
+        long turns = cursor.varint();
+        for (long t = 0; t < turns; t++) {
+            int code = cursor.next();
+            int depth = cursor.next();
+            long micros = cursor.varint();
+            int direction = code & 3;
+            if (!Bitboard2048.canMove(board, direction))
+                throw cursor.corrupt("illegal move at turn " + t);
+            score += Bitboard2048.moveScore(board, direction);
+            long next = Bitboard2048.move(board, direction);
+            if ((code & GameRecord2048.SPAWNED) != 0) {
+                int cell = (code >>> 2) & 0xF;
+                if (Bitboard2048.getCell(next, cell) != 0)
+                    throw cursor.corrupt("tile spawned on a full cell at turn " + t);
+                next = Bitboard2048.spawn(next, cell, (code >>> 6 & 1) + 1);
+            }
+            visitor.turn(board, direction, depth, micros, next);
+            board = next;
+        }
+        if (cursor.position != length)
+            throw cursor.corrupt("trailing bytes");
+        visitor.endGame(board, score, (int) turns);
+    }
+
+    /**
+     * Read the varint length in front of a game, first being its first byte.
+     *
+     * @throws EOFException if the log ends within the varint
+     * @throws IOException  if the length is too long a varint, 0 or more
+     *                      than MAX_GAME_BYTES
+     */
+    static int readLength(DataInputStream in, int first, long game) throws IOException {
+        long value = first & 0x7F;
+        int shift = 7;
+        int b = first;
+        while ((b & 0x80) != 0) {
+            if (shift > 28)
+                throw corrupt(game, "length varint too long");
+            b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        }
+        if (value <= 0 || value > MAX_GAME_BYTES)
+            throw corrupt(game, "bad length " + value);
+        return (int) value;
+    }
+
+    static IOException corrupt(long game, String message) {
+        return new IOException("Corrupt game record " + game + ": " + message);
+    }
+
+    private static final class Cursor {
+        private final byte[] bytes;
+        private final int length;
+        private final long game;
+        private int position;
+
+        Cursor(byte[] bytes, int length, long game) {
+            this.bytes = bytes;
+            this.length = length;
+            this.game = game;
+        }
+
+        int next() throws IOException {
+            if (position >= length)
+                throw corrupt("game ends early");
+            return bytes[position++] & 0xFF;
+        }
+
+        long varint() throws IOException {
+            long value = 0;
+            int shift = 0;
+            int b;
+            do {
+                if (shift > 63)
+                    throw corrupt("varint too long");
+                b = next();
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        IOException corrupt(String message) {
+            return GameRecordReader.corrupt(game, message);
+        }
+    }
+}
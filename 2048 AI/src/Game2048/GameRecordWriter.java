@@ -0,0 +1,110 @@
+package Game2048;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append-only log of finished games, each a varint length followed by a
+ * GameRecord2048. Opening an existing log appends to it, so several runs can
+ * share a file. Games are appended whole and may come from several threads;
+ * a run that dies mid-write leaves a truncated last game, which
+ * GameRecordReader ignores and the next writer cuts off before appending.
+ */
+public class GameRecordWriter implements Closeable {
+    static final int MAGIC = 0x47343852;   // "G48R"
+    static final int VERSION = 1;
+
+    private final OutputStream out;
+    private long games;
+
+    public GameRecordWriter(Path path) throws IOException {
+        boolean exists = Files.exists(path) && Files.size(path) > 0;
+        if (exists) {
+            long end = completeLength(path);
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                if (channel.size() > end)
+                    channel.truncate(end);
+            }
+        }
+        out = new BufferedOutputStream(Files.newOutputStream(path,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND), 1 << 16);
+        if (!exists) {
+            out.write(new byte[]{(byte) (MAGIC >>> 24), (byte) (MAGIC >>> 16), (byte) (MAGIC >>> 8),
+                    (byte) MAGIC, (byte) VERSION});
+        }
+    }
+
+    static void readHeader(DataInputStream in, Path path) throws IOException {
+        if (in.readInt() != MAGIC)
+            throw new IOException("Not a 2048 game record: " + path);
+        int version = in.readUnsignedByte();
+        if (version != VERSION)
+            throw new IOException("Unsupported game record version " + version + ": " + path);
+    }
+
+    // the length of the header and the complete games of a log, without a truncated last game
+    private static long completeLength(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            readHeader(in, path);
+            long end = 5;
+            for (long game = 0; ; game++) {
+                int first = in.read();
+                if (first < 0)
+                    return end;
+                int length;
+                try {
+                    length = GameRecordReader.readLength(in, first, game);
+                } catch (EOFException e) {
+                    return end;
+                }
+                if (!skipFully(in, length))
+                    return end;
+                end += GameRecord2048.varintSize(length) + length;
+            }
+        }
+    }
+
+    private static boolean skipFully(InputStream in, long length) throws IOException {
+        while (length > 0) {
+            long skipped = in.skip(length);
+            if (skipped <= 0) {
+                if (in.read() < 0)
+                    return false;
+                skipped = 1;
+            }
+            length -= skipped;
+        }
+        return true;
+    }
+
+    public synchronized void write(GameRecord2048 record) throws IOException {
+        byte[] encoded = record.encode();
+        long length = encoded.length;
+        while (length >= 0x80) {
+            out.write((int) (length | 0x80));
+            length >>>= 7;
+        }
+        out.write((int) length);
+        out.write(encoded);
+        games++;
+    }
+
+    public synchronized long getGames() {
+        return games;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,234 @@
+package Game2048;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Table-driven version of Board2048.getScore() for packed boards.
+ *
+ * Every term of the heuristic (positional SCORE, empty cells, smoothness,
+ * monotonicity and max tile) is precomputed for all 65536 packed rows and
+ * columns, so evaluating a board is a handful of array lookups with no
+ * allocation and no Math.log calls.
+ *
+ * With -Dgame2048.vector=true, batches of boards are scored by the vector
+ * module when it is on the class path and jdk.incubator.vector is
+ * available, with bit for bit the same results. It is off by default: on
+ * JDK 17 the gathers it needs are no faster than these lookups (see
+ * BatchBenchmark in the bench module).
+ */
+public final class Heuristic2048 implements Evaluator2048 {
+
+    private static final int ROWS = 1 << 16;
+
+    // positional score, counted empty cells and horizontal smoothness, one table per row index
+    final double[][] rowTerms = new double[4][ROWS];
+    // vertical smoothness of a column, already weighted
+    final double[] columnTerms = new double[ROWS];
+    // the two monotonicity accumulators of a row, before taking the max
+    final double[] monoDecreasing = new double[ROWS];
+    final double[] monoIncreasing = new double[ROWS];
+    final byte[] maxExponent = new byte[ROWS];
+
+    final double monoWeight;
+    final double maxWeight;
+    // boards with a tile of this exponent are won
+    final int winExponent;
+
+    // natural log of the tile of every exponent a 4 or 5 bit cell holds, 0 for an empty cell
+    static final double[] LOG = new double[32];
+
+    static {
+        for (int exponent = 1; exponent < LOG.length; exponent++)
+            LOG[exponent] = Math.log(Math.scalb(1.0, exponent));
+    }
+
+    // the default weights for every win exponent, built when first needed
+    private static final AtomicReferenceArray<Heuristic2048> defaults =
+            new AtomicReferenceArray<Heuristic2048>(Bitboard2048.MAX_EXPONENT + 1);
+
+    /**
+     * Build the tables for a set of weights, which takes a few tens of
+     * milliseconds; share the instance between searches.
+     */
+    public Heuristic2048(HeuristicWeights weights) {
+        this(weights, Bitboard2048.WIN_EXPONENT);
+    }
+
+    /**
+     * @param winExponent exponent of the target tile, for games played to
+     *                    another tile than 2048
+     */
+    public Heuristic2048(HeuristicWeights weights, int winExponent) {
+        this.winExponent = winExponent;
+        this.monoWeight = weights.getMonoWeight();
+        this.maxWeight = weights.getMaxWeight();
+        double smoothWeight = weights.getSmoothWeight();
+        double emptyWeight = weights.getEmptyWeight();
+
+        int[] line = new int[4];
+        for (int row = 0; row < ROWS; row++) {
+            int max = 0;
+            for (int j = 0; j < 4; j++) {
+                line[j] = Bitboard2048.valueOf((row >>> (4 * j)) & 0xF);
+                max = Math.max(max, (row >>> (4 * j)) & 0xF);
+            }
+            maxExponent[row] = (byte) max;
+
+            double smooth = smoothness(row, 4, 4) * smoothWeight;
+            for (int i = 0; i < 4; i++) {
+                double sum = smooth;
+                for (int j = 0; j < 4; j++) {
+                    if (line[j] > 0)
+                        sum += Math.log(line[j]) * weights.getScore(i, j);
+                    else if (i == 0 || j == 0 || i == 3 || j == 3)
+                        // Board2048.availableSpace() only counts border cells
+                        sum += emptyWeight;
+                }
+                rowTerms[i][row] = sum;
+            }
+            columnTerms[row] = smooth;
+
+            monoDecreasing[row] = monotonicity(row, 4, 4, false);
+            monoIncreasing[row] = monotonicity(row, 4, 4, true);
+        }
+    }
+
+    /**
+     * @return the evaluator using the weights declared in Board2048
+     */
+    public static Heuristic2048 getDefault() {
+        return getDefault(Bitboard2048.WIN_EXPONENT);
+    }
+
+    /**
+     * @return the evaluator using the weights declared in Board2048, for a
+     * game won by the tile of the given exponent; only the first call for an
+     * exponent takes a lock
+     */
+    public static Heuristic2048 getDefault(int winExponent) {
+        Heuristic2048 heuristic = defaults.get(winExponent);
+        if (heuristic == null) {
+            synchronized (defaults) {
+                heuristic = defaults.get(winExponent);
+                if (heuristic == null) {
+                    heuristic = new Heuristic2048(HeuristicWeights.DEFAULT, winExponent);
+                    defaults.set(winExponent, heuristic);
+                }
+            }
+        }
+        return heuristic;
+    }
+
+    /**
+     * Same value as Board2048.getScore() for the unpacked board.
+     */
+    @Override
+    public double evaluate(long board) {
+        int r0 = (int) (board & 0xFFFF);
+        int r1 = (int) ((board >>> 16) & 0xFFFF);
+        int r2 = (int) ((board >>> 32) & 0xFFFF);
+        int r3 = (int) (board >>> 48);
+        int max = Math.max(Math.max(maxExponent[r0], maxExponent[r1]),
+                Math.max(maxExponent[r2], maxExponent[r3]));
+        if (max >= winExponent)
+            return Double.MAX_VALUE;
+        if (Bitboard2048.isTerminal(board))
+            return -Double.MAX_VALUE;
+
+        long transposed = Bitboard2048.transpose(board);
+        double sum = rowTerms[0][r0] + rowTerms[1][r1] + rowTerms[2][r2] + rowTerms[3][r3]
+                + columnTerms[(int) (transposed & 0xFFFF)]
+                + columnTerms[(int) ((transposed >>> 16) & 0xFFFF)]
+                + columnTerms[(int) ((transposed >>> 32) & 0xFFFF)]
+                + columnTerms[(int) (transposed >>> 48)];
+
+        double decreasing = monoDecreasing[r0] + monoDecreasing[r1] + monoDecreasing[r2] + monoDecreasing[r3];
+        double increasing = monoIncreasing[r0] + monoIncreasing[r1] + monoIncreasing[r2] + monoIncreasing[r3];
+        sum += Math.max(decreasing, increasing) * monoWeight;
+        sum += Bitboard2048.valueOf(max) * maxWeight;
+        return sum;
+    }
+
+    @Override
+    public void evaluate(long[] boards, int count, double[] scores) {
+        BatchKernel2048 kernel = Kernel.INSTANCE;
+        if (kernel != null) {
+            kernel.evaluate(this, boards, count, scores);
+        } else {
+            for (int i = 0; i < count; i++)
+                scores[i] = evaluate(boards[i]);
+        }
+    }
+
+    /**
+     * @return whether batches are scored by the vector module
+     */
+    public static boolean isVectorized() {
+        return Kernel.INSTANCE != null;
+    }
+
+    // looked up on the first batch, null when the vector module is off or cannot run
+    private static final class Kernel {
+        static final BatchKernel2048 INSTANCE = load();
+
+        private static BatchKernel2048 load() {
+            if (!Boolean.getBoolean("game2048.vector"))
+                return null;
+            try {
+                return (BatchKernel2048) Class.forName("Game2048.VectorHeuristic2048")
+                        .getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // no vector module, or a JVM without jdk.incubator.vector
+                return null;
+            }
+        }
+    }
+
+    /**
+     * One line of Board2048.monotonicity() on a packed line of size cells of
+     * bits bits, the first cell in the low bits.
+     *
+     * @return the accumulator of increasing lines, or of decreasing ones
+     */
+    static double monotonicity(int line, int size, int bits, boolean increasing) {
+        int mask = (1 << bits) - 1;
+        double rec = 0.0;
+        int cur = 0, next = 1;
+        while (next < size) {
+            while (next < size && (line >>> (bits * next) & mask) == 0) {
+                next++;
+            }
+            if (next >= size)
+                next--;
+            double curVal = LOG[line >>> (bits * cur) & mask];
+            double nextVal = LOG[line >>> (bits * next) & mask];
+            if (curVal > nextVal) {
+                if (!increasing)
+                    rec += nextVal - curVal;
+            } else if (increasing) {
+                rec += curVal - nextVal;
+            }
+            cur = next;
+            next++;
+        }
+        return rec;
+    }
+
+    // one line of Board2048.smoothValue(), the same scan is used for rows and columns
+    static double smoothness(int line, int size, int bits) {
+        int mask = (1 << bits) - 1;
+        double smooth = 0.0;
+        for (int j = 0; j < size; j++) {
+            int exponent = line >>> (bits * j) & mask;
+            if (exponent != 0) {
+                int next = j + 1;
+                while (next < size && (line >>> (bits * next) & mask) != 0) {
+                    next++;
+                }
+                if (next < size && (line >>> (bits * next) & mask) != 0)
+                    smooth -= Math.abs(LOG[exponent] - LOG[line >>> (bits * next) & mask]);
+            }
+        }
+        return smooth;
+    }
+}
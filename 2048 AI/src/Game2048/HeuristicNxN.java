@@ -0,0 +1,127 @@
+package Game2048;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Heuristic2048 for the boards of any Variant2048: the same terms and
+ * weights. The smoothness and monotonicity of a packed row come from tables
+ * over every possible row when RowTableN would build tables for that row
+ * format (24 MB for the largest), and from a scan of the packed row
+ * otherwise; the positional term is a loop over the cells. Evaluating a
+ * board allocates nothing and calls no Math.log.
+ *
+ * The positional SCORE matrix is 4x4, so other sizes sample it at the
+ * nearest position, keeping its corners on the corners of the board. On a
+ * 4x4 board this matches Heuristic2048 up to rounding.
+ */
+public final class HeuristicNxN {
+    private static final ConcurrentMap<Variant2048, HeuristicNxN> DEFAULTS =
+            new ConcurrentHashMap<Variant2048, HeuristicNxN>();
+
+    private static final ConcurrentMap<Integer, LineTerms> LINE_TERMS = new ConcurrentHashMap<Integer, LineTerms>();
+
+    private final Variant2048 variant;
+    private final int size;
+    private final int bits;
+    // null when the rows are too long for tables
+    private final LineTerms lines;
+    // SCORE weight of every cell, and whether an empty cell there is counted
+    private final double[] positional;
+    private final boolean[] border;
+    private final double smoothWeight;
+    private final double monoWeight;
+    private final double emptyWeight;
+    private final double maxWeight;
+
+    public HeuristicNxN(Variant2048 variant, HeuristicWeights weights) {
+        this.variant = variant;
+        this.size = variant.getSize();
+        this.bits = variant.getBits();
+        this.lines = size * bits <= RowTableN.MAX_TABLE_BITS
+                ? LINE_TERMS.computeIfAbsent(size << 8 | bits, key -> new LineTerms(size, bits))
+                : null;
+        this.positional = new double[variant.cells()];
+        this.border = new boolean[variant.cells()];
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                int row = Math.round(i * 3f / (size - 1));
+                int column = Math.round(j * 3f / (size - 1));
+                positional[size * i + j] = weights.getScore(row, column);
+                border[size * i + j] = i == 0 || j == 0 || i == size - 1 || j == size - 1;
+            }
+        }
+        this.smoothWeight = weights.getSmoothWeight();
+        this.monoWeight = weights.getMonoWeight();
+        this.emptyWeight = weights.getEmptyWeight();
+        this.maxWeight = weights.getMaxWeight();
+    }
+
+    /**
+     * @return the evaluator using the weights declared in Board2048
+     */
+    public static HeuristicNxN getDefault(Variant2048 variant) {
+        return DEFAULTS.computeIfAbsent(variant, v -> new HeuristicNxN(v, HeuristicWeights.DEFAULT));
+    }
+
+    public double evaluate(long[] board) {
+        int max = variant.maxExponent(board);
+        if (max >= variant.getTargetExponent())
+            return Double.MAX_VALUE;
+        if (variant.isTerminal(board))
+            return -Double.MAX_VALUE;
+
+        int mask = (1 << bits) - 1;
+        double sum = 0;
+        double smooth = 0;
+        double decreasing = 0;
+        double increasing = 0;
+        for (int i = 0; i < size; i++) {
+            int row = variant.getRow(board, i);
+            int column = variant.getColumn(board, i);
+            for (int j = 0; j < size; j++) {
+                int cell = size * i + j;
+                int exponent = row >>> (bits * j) & mask;
+                if (exponent > 0)
+                    sum += Heuristic2048.LOG[exponent] * positional[cell];
+                else if (border[cell])
+                    sum += emptyWeight;
+            }
+            if (lines != null) {
+                smooth += lines.smooth[row] + lines.smooth[column];
+                decreasing += lines.decreasing[row];
+                increasing += lines.increasing[row];
+            } else {
+                smooth += Heuristic2048.smoothness(row, size, bits) + Heuristic2048.smoothness(column, size, bits);
+                decreasing += Heuristic2048.monotonicity(row, size, bits, false);
+                increasing += Heuristic2048.monotonicity(row, size, bits, true);
+            }
+        }
+        sum += smooth * smoothWeight;
+        sum += Math.max(decreasing, increasing) * monoWeight;
+        sum += Bitboard2048.valueOf(max) * maxWeight;
+        return sum;
+    }
+
+    /**
+     * The unweighted smoothness and monotonicity of every packed row of one
+     * format, shared by the evaluators of all weights.
+     */
+    private static final class LineTerms {
+        final double[] smooth;
+        final double[] decreasing;
+        final double[] increasing;
+
+        LineTerms(int size, int bits) {
+            int rows = 1 << (size * bits);
+            smooth = new double[rows];
+            decreasing = new double[rows];
+            increasing = new double[rows];
+            for (int row = 0; row < rows; row++) {
+                smooth[row] = Heuristic2048.smoothness(row, size, bits);
+                decreasing[row] = Heuristic2048.monotonicity(row, size, bits, false);
+                increasing[row] = Heuristic2048.monotonicity(row, size, bits, true);
+            }
+        }
+    }
+}
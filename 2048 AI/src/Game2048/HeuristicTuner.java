@@ -0,0 +1,237 @@
+package Game2048;
+
+import Search.ExpectimaxAI;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Tunes HeuristicWeights by SPSA (simultaneous perturbation stochastic
+ * approximation): every iteration perturbs the weights at once in a random
+ * +/- direction, plays the same seeded games with both perturbed vectors,
+ * and steps along the score difference. smoothWeight is left as it is: the
+ * smoothness term of Heuristic2048 is always 0, so its weight has no
+ * gradient and would only add noise. Fitness is the mean game
+ * score of ExpectimaxAI at a fixed depth, played by Simulator2048.playGame
+ * on several threads.
+ *
+ * Every few iterations the current vector is played on a fixed set of
+ * validation games, and the best one so far is written to the output file,
+ * which Simulator2048 -heuristic and Game2048 can load. The state of the
+ * tuner is checkpointed after each iteration; a run started with an existing
+ * checkpoint file continues from it.
+ *
+ * Usage: HeuristicTuner [-iterations N] [-games G] [-threads T] [-depth D]
+ *                       [-seed S] [-a A] [-c C] [-check K] [-in weights]
+ *                       [-out weights] [-checkpoint file]
+ */
+public class HeuristicTuner {
+    // standard SPSA gain decay exponents
+    private static final double ALPHA = 0.602;
+    private static final double GAMMA = 0.101;
+    // validation games are seeded far away from the training games
+    private static final long VALIDATION_SEED_OFFSET = -1000000;
+
+    private final ExecutorService executor;
+    private final ThreadLocal<ExpectimaxAI> ais;
+    private final ThreadLocal<Simulator2048.LatencyHistogram> histograms =
+            ThreadLocal.withInitial(Simulator2048.LatencyHistogram::new);
+    private final int games;
+    private final int depth;
+
+    public HeuristicTuner(int threads, int games, int depth, int tableMegabytes) {
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.games = games;
+        this.depth = depth;
+        this.ais = ThreadLocal.withInitial(() -> {
+            ExpectimaxAI ai = new ExpectimaxAI(new Board2048(Board2048.AI_PLAYER, 0L));
+            ai.setTranspositionTableSize(tableMegabytes);
+            return ai;
+        });
+    }
+
+    /**
+     * @return the mean score of the games seeded firstSeed, firstSeed + 1, ...
+     */
+    public double fitness(HeuristicWeights weights, long firstSeed) throws Exception {
+        final Heuristic2048 heuristic = new Heuristic2048(weights);
+        List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+        for (int i = 0; i < games; i++) {
+            final long seed = firstSeed + i;
+            futures.add(executor.submit(() -> {
+                ExpectimaxAI ai = ais.get();
+                ai.setEvaluator(heuristic);
+                return Simulator2048.playGame(ai, seed, depth, histograms.get()).score;
+            }));
+        }
+        long total = 0;
+        for (Future<Integer> future : futures)
+            total += future.get();
+        return total / (double) games;
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int iterations = 100;
+        int games = 50;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int depth = 2;
+        long seed = 2048;
+        double a = 0.2;
+        double c = 0.1;
+        int checkEvery = 5;
+        Path in = null;
+        Path out = Paths.get("heuristic.weights");
+        Path checkpointFile = Paths.get("heuristic.checkpoint");
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].equals("-iterations"))
+                iterations = Integer.parseInt(args[i + 1]);
+            else if (args[i].equals("-games"))
+                games = Integer.parseInt(args[i + 1]);
+            else if (args[i].equals("-threads"))
+                threads = Integer.parseInt(args[i + 1]);
+            else if (args[i].equals("-depth"))
+                depth = Integer.parseInt(args[i + 1]);
+            else if (args[i].equals("-seed"))
+                seed = Long.parseLong(args[i + 1]);
+            else if (args[i].equals("-a"))
+                a = Double.parseDouble(args[i + 1]);
+            else if (args[i].equals("-c"))
+                c = Double.parseDouble(args[i + 1]);
+            else if (args[i].equals("-check"))
+                checkEvery = Integer.parseInt(args[i + 1]);
+            else if (args[i].equals("-in"))
+                in = Paths.get(args[i + 1]);
+            else if (args[i].equals("-out"))
+                out = Paths.get(args[i + 1]);
+            else if (args[i].equals("-checkpoint"))
+                checkpointFile = Paths.get(args[i + 1]);
+            else
+                throw new IllegalArgumentException("Unknown option: " + args[i]);
+        }
+
+        HeuristicTuner tuner = new HeuristicTuner(threads, games, depth, 16);
+        long validationSeed = seed + VALIDATION_SEED_OFFSET;
+        Checkpoint state;
+        if (Files.exists(checkpointFile)) {
+            state = Checkpoint.load(checkpointFile);
+            System.out.printf("resuming from iteration %d, best %.0f%n", state.iteration, state.bestFitness);
+        } else {
+            state = new Checkpoint();
+            state.start = (in != null ? HeuristicWeights.load(in) : HeuristicWeights.DEFAULT).toVector();
+            state.theta = state.start.clone();
+            state.best = state.start.clone();
+            state.bestFitness = tuner.fitness(HeuristicWeights.fromVector(state.theta), validationSeed);
+            state.baseline = state.bestFitness;
+            System.out.printf("start: validation %.0f%n", state.baseline);
+        }
+
+        // perturbations are relative to the size of each starting weight
+        double[] scale = new double[HeuristicWeights.SIZE];
+        for (int i = 0; i < scale.length; i++)
+            scale[i] = Math.max(Math.abs(state.start[i]), 0.5);
+        double stability = 0.1 * iterations;
+
+        for (int k = state.iteration; k < iterations; k++) {
+            double ak = a / Math.pow(k + 1 + stability, ALPHA);
+            double ck = c / Math.pow(k + 1, GAMMA);
+            Random random = new Random(seed + k);
+            double[] delta = new double[HeuristicWeights.SIZE];
+            double[] plus = new double[HeuristicWeights.SIZE];
+            double[] minus = new double[HeuristicWeights.SIZE];
+            for (int i = 0; i < delta.length; i++) {
+                delta[i] = i == HeuristicWeights.SMOOTH_WEIGHT ? 0 : random.nextBoolean() ? 1 : -1;
+                plus[i] = state.theta[i] + ck * scale[i] * delta[i];
+                minus[i] = state.theta[i] - ck * scale[i] * delta[i];
+            }
+            // both sides play the same games, so the difference is not drowned in luck
+            long trainingSeed = seed + (long) k * games;
+            double yPlus = tuner.fitness(HeuristicWeights.fromVector(plus), trainingSeed);
+            double yMinus = tuner.fitness(HeuristicWeights.fromVector(minus), trainingSeed);
+            double difference = (yPlus - yMinus) / state.baseline;
+            for (int i = 0; i < delta.length; i++)
+                if (delta[i] != 0)
+                    state.theta[i] += ak * scale[i] * difference / (2 * ck * delta[i]);
+            System.out.printf("iteration %d: +%.0f -%.0f%n", k + 1, yPlus, yMinus);
+
+            if ((k + 1) % checkEvery == 0 || k + 1 == iterations) {
+                double validation = tuner.fitness(HeuristicWeights.fromVector(state.theta), validationSeed);
+                System.out.printf("  validation %.0f (best %.0f)%n", validation, state.bestFitness);
+                if (validation > state.bestFitness) {
+                    state.bestFitness = validation;
+                    state.best = state.theta.clone();
+                    HeuristicWeights.fromVector(state.best).save(out);
+                }
+            }
+            state.iteration = k + 1;
+            state.save(checkpointFile);
+        }
+        tuner.shutdown();
+
+        HeuristicWeights best = HeuristicWeights.fromVector(state.best);
+        best.save(out);
+        System.out.printf("best validation %.0f (start %.0f): %s%n", state.bestFitness, state.baseline, best);
+        System.out.println("weights written to " + out);
+    }
+
+    /**
+     * Everything needed to continue a run: the iteration reached, the
+     * starting, current and best vectors, and the validation scores of the
+     * start and the best.
+     */
+    static class Checkpoint {
+        int iteration;
+        double[] start;
+        double[] theta;
+        double[] best;
+        double bestFitness;
+        double baseline;
+
+        static Checkpoint load(Path file) throws IOException {
+            Properties properties = new Properties();
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            }
+            Checkpoint state = new Checkpoint();
+            state.iteration = Integer.parseInt(properties.getProperty("iteration"));
+            state.bestFitness = Double.parseDouble(properties.getProperty("bestFitness"));
+            state.baseline = Double.parseDouble(properties.getProperty("baseline"));
+            state.start = HeuristicWeights.read(properties, "start.").toVector();
+            state.theta = HeuristicWeights.read(properties, "theta.").toVector();
+            state.best = HeuristicWeights.read(properties, "best.").toVector();
+            return state;
+        }
+
+        // written next to the file and renamed, so a crash never leaves half a checkpoint
+        void save(Path file) throws IOException {
+            Properties properties = new Properties();
+            properties.setProperty("iteration", Integer.toString(iteration));
+            properties.setProperty("bestFitness", Double.toString(bestFitness));
+            properties.setProperty("baseline", Double.toString(baseline));
+            HeuristicWeights.fromVector(start).write(properties, "start.");
+            HeuristicWeights.fromVector(theta).write(properties, "theta.");
+            HeuristicWeights.fromVector(best).write(properties, "best.");
+            Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+                properties.store(writer, "HeuristicTuner checkpoint");
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+}
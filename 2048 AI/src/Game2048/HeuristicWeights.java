@@ -0,0 +1,146 @@
+package Game2048;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * The weights of Heuristic2048: the positional SCORE matrix and the weights
+ * of smoothness, monotonicity, empty cells and max tile.
+ *
+ * As a vector (see toVector) the 16 SCORE entries come first, row by row,
+ * followed by the four weights in that order. Weights are saved as a
+ * properties file, so that a tuned file can also be read and edited by hand.
+ */
+public final class HeuristicWeights {
+    public static final int SIZE = 20;
+    // index of smoothWeight in the vector
+    public static final int SMOOTH_WEIGHT = 16;
+
+    private static final String[] WEIGHT_NAMES = {"smoothWeight", "monoWeight", "emptyWeight", "maxWeight"};
+
+    /**
+     * The hand-tuned weights declared in Board2048.
+     */
+    public static final HeuristicWeights DEFAULT = new HeuristicWeights(Board2048.SCORE,
+            Board2048.smoothWeight, Board2048.monoWeight, Board2048.emptyWeight, Board2048.maxWeight);
+
+    private final double[][] score = new double[4][4];
+    private final double smoothWeight;
+    private final double monoWeight;
+    private final double emptyWeight;
+    private final double maxWeight;
+
+    public HeuristicWeights(double[][] score, double smoothWeight, double monoWeight,
+                            double emptyWeight, double maxWeight) {
+        for (int i = 0; i < 4; i++)
+            System.arraycopy(score[i], 0, this.score[i], 0, 4);
+        this.smoothWeight = smoothWeight;
+        this.monoWeight = monoWeight;
+        this.emptyWeight = emptyWeight;
+        this.maxWeight = maxWeight;
+    }
+
+    public static HeuristicWeights fromVector(double[] vector) {
+        if (vector.length != SIZE)
+            throw new IllegalArgumentException("Expected " + SIZE + " weights, got " + vector.length);
+        double[][] score = new double[4][4];
+        for (int i = 0; i < 16; i++)
+            score[i / 4][i % 4] = vector[i];
+        return new HeuristicWeights(score, vector[16], vector[17], vector[18], vector[19]);
+    }
+
+    public double[] toVector() {
+        double[] vector = new double[SIZE];
+        for (int i = 0; i < 16; i++)
+            vector[i] = score[i / 4][i % 4];
+        vector[16] = smoothWeight;
+        vector[17] = monoWeight;
+        vector[18] = emptyWeight;
+        vector[19] = maxWeight;
+        return vector;
+    }
+
+    public double getScore(int i, int j) {
+        return score[i][j];
+    }
+
+    public double getSmoothWeight() {
+        return smoothWeight;
+    }
+
+    public double getMonoWeight() {
+        return monoWeight;
+    }
+
+    public double getEmptyWeight() {
+        return emptyWeight;
+    }
+
+    public double getMaxWeight() {
+        return maxWeight;
+    }
+
+    public static HeuristicWeights load(Path file) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        return read(properties, "");
+    }
+
+    public void save(Path file) throws IOException {
+        Properties properties = new Properties();
+        write(properties, "");
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            properties.store(writer, "Heuristic2048 weights");
+        }
+    }
+
+    /**
+     * Read weights stored by write() under the prefix.
+     */
+    static HeuristicWeights read(Properties properties, String prefix) throws IOException {
+        double[] vector = new double[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            String name = prefix + nameOf(i);
+            String value = properties.getProperty(name);
+            if (value == null)
+                throw new IOException("Missing weight " + name);
+            try {
+                vector[i] = Double.parseDouble(value.trim());
+            } catch (NumberFormatException e) {
+                throw new IOException("Bad value for " + name + ": " + value, e);
+            }
+        }
+        return fromVector(vector);
+    }
+
+    void write(Properties properties, String prefix) {
+        double[] vector = toVector();
+        for (int i = 0; i < SIZE; i++)
+            properties.setProperty(prefix + nameOf(i), Double.toString(vector[i]));
+    }
+
+    // score.i.j for the SCORE matrix, then the field names of the weights
+    private static String nameOf(int index) {
+        return index < 16 ? "score." + index / 4 + "." + index % 4 : WEIGHT_NAMES[index - 16];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < 4; i++) {
+            s.append(i == 0 ? "SCORE {" : ", ").append('{');
+            for (int j = 0; j < 4; j++)
+                s.append(j == 0 ? "" : ", ").append(String.format("%.3f", score[i][j]));
+            s.append('}');
+        }
+        return s.append(String.format("}, smooth %.3f, mono %.3f, empty %.3f, max %.3f",
+                smoothWeight, monoWeight, emptyWeight, maxWeight)).toString();
+    }
+}
@@ -0,0 +1,76 @@
+package Game2048;
+
+/**
+ * Primitive encoding of 2048 moves in an int, so that search code can
+ * generate and apply moves without creating MoveOrAdd objects or strings.
+ *
+ * A move of the AI is just its Bitboard2048 direction (0 to 3). A tile
+ * added by the computer has the SPAWN bit set, the cell (size * row +
+ * column) in bits 4-9 and the tile exponent in bits 0-3. Cells go up to 63,
+ * enough for the NxN boards of Variant2048.
+ */
+public final class Move2048 {
+    public static final int SPAWN = 0x1000;
+    // enough room for every move of either player
+    public static final int MAX_MOVES = 2 * Bitboard2048.CELLS;
+
+    private static final String DIRECTIONS[] = {"UP", "DOWN", "LEFT", "RIGHT"};
+
+    private Move2048() {
+    }
+
+    public static int spawn(int cell, int exponent) {
+        return SPAWN | cell << 4 | exponent;
+    }
+
+    public static boolean isSpawn(int move) {
+        return (move & SPAWN) != 0;
+    }
+
+    public static int directionOf(int move) {
+        return move & 0x3;
+    }
+
+    public static int cellOf(int move) {
+        return (move >>> 4) & 0x3F;
+    }
+
+    public static int exponentOf(int move) {
+        return move & 0xF;
+    }
+
+    /**
+     * Parse the string form used by MoveOrAdd: a direction such as "UP", or
+     * "value row column" for an added tile.
+     */
+    public static int parse(String s) {
+        return parse(s, 4);
+    }
+
+    /**
+     * Parse a move of a board with the given number of rows and columns.
+     */
+    public static int parse(String s, int size) {
+        for (int i = 0; i < DIRECTIONS.length; i++)
+            if (DIRECTIONS[i].equals(s))
+                return i;
+        String[] add = s.trim().split("\\s+");
+        if (add.length != 3)
+            throw new IllegalArgumentException("Not a 2048 move: " + s);
+        int value = Integer.parseInt(add[0]);
+        int i = Integer.parseInt(add[1]);
+        int j = Integer.parseInt(add[2]);
+        return spawn(size * i + j, Bitboard2048.exponentOf(value));
+    }
+
+    public static String toString(int move) {
+        return toString(move, 4);
+    }
+
+    public static String toString(int move, int size) {
+        if (!isSpawn(move))
+            return DIRECTIONS[directionOf(move)];
+        int cell = cellOf(move);
+        return Bitboard2048.valueOf(exponentOf(move)) + " " + cell / size + " " + cell % size;
+    }
+}
@@ -4,31 +4,52 @@ import Game.MoveInterface;
 
 /**
  * Created by gejing on 3/8/16.
+ *
+ * Object form of a Move2048 code. The string form is only built when asked
+ * for, and moves compare by code.
  */
 public class MoveOrAdd implements MoveInterface {
     private String move;
+    private final int code;
+    // rows and columns of the board, to name the cell of an added tile
+    private final int size;
 
     public MoveOrAdd(String Move) {
         super();
         this.move = Move;
+        this.code = Move2048.parse(Move);
+        this.size = 4;
+    }
+
+    public MoveOrAdd(int code) {
+        this(code, 4);
+    }
+
+    public MoveOrAdd(int code, int size) {
+        super();
+        this.code = code;
+        this.size = size;
+    }
+
+    public int getCode() {
+        return code;
     }
 
     @Override
     public String getMove() {
+        if (move == null)
+            move = Move2048.toString(code, size);
         return move;
     }
 
     @Override
     public String toString() {
-        return move;
+        return getMove();
     }
 
     @Override
     public int hashCode() {
-        final int prime = 31;
-        int result = 1;
-        result = prime * result + ((move == null) ? 0 : move.hashCode());
-        return result;
+        return 31 + code;
     }
 
     @Override
@@ -40,11 +61,6 @@ public class MoveOrAdd implements MoveInterface {
         if (getClass() != obj.getClass())
             return false;
         MoveOrAdd other = (MoveOrAdd) obj;
-        if (move == null) {
-            if (other.move != null)
-                return false;
-        } else if (!move.equals(other.move))
-            return false;
-        return true;
+        return code == other.code;
     }
 }
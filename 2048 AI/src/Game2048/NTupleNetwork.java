@@ -0,0 +1,193 @@
+package Game2048;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * N-tuple network: a board is scored by reading, for every tuple of cells
+ * and each of the 8 symmetries of the board, one weight indexed by the
+ * exponents on those cells, and adding them all up.
+ *
+ * Weights are kept in FloatBuffers, either on the heap while training or
+ * memory-mapped straight from a weights file for the search.
+ *
+ * File format (little endian): magic, version, tuple count, then for every
+ * tuple its length and cells, followed by the weights of all tuples, one
+ * float per index in the order the tuples were listed.
+ */
+public final class NTupleNetwork implements Evaluator2048 {
+    private static final int MAGIC = 0x4E543438;    // "NT48"
+    private static final int VERSION = 1;
+
+    /**
+     * Four overlapping 6-tuples (cells numbered row by row): a full row and
+     * half of the next, for the first and the second row, and a 2x3
+     * rectangle, at the corner and one row down; each seen under all 8
+     * symmetries.
+     */
+    public static final int[][] DEFAULT_TUPLES = {
+            {0, 1, 2, 3, 4, 5},
+            {4, 5, 6, 7, 8, 9},
+            {0, 1, 2, 4, 5, 6},
+            {4, 5, 6, 8, 9, 10}
+    };
+
+    private final int[][] tuples;
+    // cells of every tuple under every symmetry, [tuple * 8 + symmetry][i]
+    private final int[][] cells;
+    private final FloatBuffer[] weights;
+
+    private NTupleNetwork(int[][] tuples, FloatBuffer[] weights) {
+        this.tuples = tuples;
+        this.weights = weights;
+        this.cells = new int[tuples.length * 8][];
+        for (int t = 0; t < tuples.length; t++)
+            for (int symmetry = 0; symmetry < 8; symmetry++)
+                cells[t * 8 + symmetry] = transformCells(tuples[t], symmetry);
+    }
+
+    /**
+     * @return a network with every weight set to 0, ready for training
+     */
+    public static NTupleNetwork create(int[][] tuples) {
+        FloatBuffer[] weights = new FloatBuffer[tuples.length];
+        for (int t = 0; t < tuples.length; t++)
+            weights[t] = FloatBuffer.wrap(new float[1 << (4 * tuples[t].length)]);
+        return new NTupleNetwork(tuples, weights);
+    }
+
+    /**
+     * Map a weights file into memory. The weights are read in place, so
+     * loading is immediate and several processes can share the pages.
+     */
+    public static NTupleNetwork load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            if (mapped.getInt() != MAGIC || mapped.getInt() != VERSION)
+                throw new IOException("Not an n-tuple weights file: " + file);
+            int[][] tuples = new int[mapped.getInt()][];
+            for (int t = 0; t < tuples.length; t++) {
+                tuples[t] = new int[mapped.getInt()];
+                for (int i = 0; i < tuples[t].length; i++)
+                    tuples[t][i] = mapped.getInt();
+            }
+            FloatBuffer[] weights = new FloatBuffer[tuples.length];
+            int position = mapped.position();
+            for (int t = 0; t < tuples.length; t++) {
+                int size = 1 << (4 * tuples[t].length);
+                mapped.limit(position + 4 * size).position(position);
+                weights[t] = mapped.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+                position += 4 * size;
+            }
+            return new NTupleNetwork(tuples, weights);
+        }
+    }
+
+    /**
+     * Copy the weights of a network with the same tuples, e.g. a loaded one
+     * into a network created for training, since mapped weights are read-only.
+     */
+    public void copyFrom(NTupleNetwork other) {
+        if (!Arrays.deepEquals(tuples, other.tuples))
+            throw new IllegalArgumentException("Networks have different tuples");
+        for (int t = 0; t < weights.length; t++) {
+            FloatBuffer source = other.weights[t].duplicate();
+            source.clear();
+            weights[t].clear();
+            weights[t].put(source);
+            weights[t].clear();
+        }
+    }
+
+    public void save(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(tuples.length);
+            for (int[] tuple : tuples) {
+                buffer.putInt(tuple.length);
+                for (int cell : tuple)
+                    buffer.putInt(cell);
+            }
+            for (FloatBuffer tupleWeights : weights) {
+                for (int i = 0; i < tupleWeights.capacity(); i++) {
+                    if (buffer.remaining() < 4)
+                        flush(channel, buffer);
+                    buffer.putFloat(tupleWeights.get(i));
+                }
+            }
+            flush(channel, buffer);
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * @return the number of weights read for one board, for scaling learning rates
+     */
+    public int features() {
+        return cells.length;
+    }
+
+    /**
+     * The learned value of a board, with no special case for won or lost boards.
+     */
+    public double value(long board) {
+        double sum = 0;
+        for (int i = 0; i < cells.length; i++)
+            sum += weights[i >>> 3].get(index(board, cells[i]));
+        return sum;
+    }
+
+    @Override
+    public double evaluate(long board) {
+        if (Bitboard2048.isWin(board))
+            return Double.MAX_VALUE;
+        if (Bitboard2048.isTerminal(board))
+            return -Double.MAX_VALUE;
+        return value(board);
+    }
+
+    /**
+     * Move every weight read for the board by delta. Concurrent updates from
+     * several training threads are not synchronized; an update lost now and
+     * then does not matter for the training.
+     */
+    public void update(long board, float delta) {
+        for (int i = 0; i < cells.length; i++) {
+            FloatBuffer tupleWeights = weights[i >>> 3];
+            int index = index(board, cells[i]);
+            tupleWeights.put(index, tupleWeights.get(index) + delta);
+        }
+    }
+
+    private static int index(long board, int[] cells) {
+        int index = 0;
+        for (int i = 0; i < cells.length; i++)
+            index |= Bitboard2048.getCell(board, cells[i]) << (4 * i);
+        return index;
+    }
+
+    // where each cell of the tuple ends up under the symmetry
+    private static int[] transformCells(int[] tuple, int symmetry) {
+        int[] transformed = new int[tuple.length];
+        for (int i = 0; i < tuple.length; i++) {
+            long marked = Bitboard2048.transform(1L << (4 * tuple[i]), symmetry);
+            transformed[i] = Long.numberOfTrailingZeros(marked) / 4;
+        }
+        return transformed;
+    }
+}
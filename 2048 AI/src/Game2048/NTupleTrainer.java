@@ -0,0 +1,149 @@
+package Game2048;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Headless training of an NTupleNetwork by temporal difference learning on
+ * afterstates: every game is played greedily with the network itself, and
+ * after each move the value of the previous afterstate is moved towards the
+ * reward of the next move plus the value of the next afterstate.
+ *
+ * Training threads share one set of weights and update it without locking.
+ * The default tuples need about 270 MB of weights, so run with -Xmx512m or
+ * more.
+ *
+ * Usage: NTupleTrainer [-games N] [-threads T] [-alpha A] [-seed S]
+ *                      [-in weights] [-out weights] [-report N]
+ * (-in continues the training of an existing weights file)
+ */
+public class NTupleTrainer {
+
+    private final NTupleNetwork network;
+    // learning rate of a single weight, the error is spread over all of them
+    private final float alpha;
+
+    public NTupleTrainer(NTupleNetwork network, double alpha) {
+        this.network = network;
+        this.alpha = (float) (alpha / network.features());
+    }
+
+    /**
+     * Play and learn from one game, played past 2048 until no move is left.
+     *
+     * @return the score of the game
+     */
+    public int trainGame(Random random) {
+        long board = Bitboard2048.spawnRandom(Bitboard2048.spawnRandom(0, random), random);
+        int score = 0;
+        long afterstate = 0;
+        boolean first = true;
+        while (true) {
+            int direction = bestDirection(board);
+            if (direction < 0)
+                break;
+            int reward = Bitboard2048.moveScore(board, direction);
+            long next = Bitboard2048.move(board, direction);
+            if (!first)
+                learn(afterstate, reward + network.value(next));
+            first = false;
+            afterstate = next;
+            score += reward;
+            board = Bitboard2048.spawnRandom(next, random);
+        }
+        if (!first)
+            learn(afterstate, 0);
+        return score;
+    }
+
+    private void learn(long afterstate, double target) {
+        double error = target - network.value(afterstate);
+        network.update(afterstate, (float) (alpha * error));
+    }
+
+    // the move with the highest reward plus afterstate value, or -1 if there is none
+    private int bestDirection(long board) {
+        int best = -1;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        for (int direction = Bitboard2048.UP; direction <= Bitboard2048.RIGHT; direction++) {
+            if (!Bitboard2048.canMove(board, direction))
+                continue;
+            double value = Bitboard2048.moveScore(board, direction)
+                    + network.value(Bitboard2048.move(board, direction));
+            if (value > bestValue) {
+                bestValue = value;
+                best = direction;
+            }
+        }
+        return best;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int games = 100000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        double alpha = 0.1;
+        long seed = 2048;
+        Path in = null;
+        Path out = Paths.get("ntuple.weights");
+        int reportEvery = 1000;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].equals("-games"))
+                games = Integer.parseInt(args[i + 1]);
+            else if (args[i].equals("-threads"))
+                threads = Integer.parseInt(args[i + 1]);
+            else if (args[i].equals("-alpha"))
+                alpha = Double.parseDouble(args[i + 1]);
+            else if (args[i].equals("-seed"))
+                seed = Long.parseLong(args[i + 1]);
+            else if (args[i].equals("-in"))
+                in = Paths.get(args[i + 1]);
+            else if (args[i].equals("-out"))
+                out = Paths.get(args[i + 1]);
+            else if (args[i].equals("-report"))
+                reportEvery = Integer.parseInt(args[i + 1]);
+            else
+                throw new IllegalArgumentException("Unknown option: " + args[i]);
+        }
+
+        NTupleNetwork network = NTupleNetwork.create(NTupleNetwork.DEFAULT_TUPLES);
+        if (in != null)
+            network.copyFrom(NTupleNetwork.load(in));
+        final NTupleTrainer trainer = new NTupleTrainer(network, alpha);
+
+        final int totalGames = games;
+        final int report = reportEvery;
+        final long firstSeed = seed;
+        final AtomicInteger nextGame = new AtomicInteger();
+        final AtomicLong windowScore = new AtomicLong();
+        final AtomicInteger windowGames = new AtomicInteger();
+        final long start = System.nanoTime();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Future<?>[] workers = new Future<?>[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = executor.submit(() -> {
+                int game;
+                while ((game = nextGame.getAndIncrement()) < totalGames) {
+                    windowScore.addAndGet(trainer.trainGame(new Random(firstSeed + game)));
+                    if (windowGames.incrementAndGet() % report == 0) {
+                        System.out.printf("%d games, mean score %.0f over the last %d, %.1f s%n",
+                                game + 1, windowScore.getAndSet(0) / (double) report, report,
+                                (System.nanoTime() - start) / 1e9);
+                    }
+                }
+            });
+        }
+        for (Future<?> worker : workers)
+            worker.get();
+        executor.shutdown();
+
+        network.save(out);
+        System.out.println("weights written to " + out);
+    }
+}
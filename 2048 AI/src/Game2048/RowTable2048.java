@@ -0,0 +1,61 @@
+package Game2048;
+
+/**
+ * Precomputed slides for every possible packed row (4 cells x 4 bits).
+ *
+ * For each of the 65536 rows we keep the slided row, the points scored by
+ * the merges and whether the slide changed anything, for both directions.
+ * A whole board move is then four lookups, plus a transpose for UP/DOWN.
+ */
+final class RowTable2048 {
+
+    static final int ROWS = 1 << 16;
+
+    static final char[] LEFT = new char[ROWS];
+    static final char[] RIGHT = new char[ROWS];
+    static final int[] SCORE_LEFT = new int[ROWS];
+    static final int[] SCORE_RIGHT = new int[ROWS];
+    static final boolean[] CHANGED_LEFT = new boolean[ROWS];
+    static final boolean[] CHANGED_RIGHT = new boolean[ROWS];
+
+    static {
+        int[] line = new int[4];
+        for (int row = 0; row < ROWS; row++) {
+            int score = 0;
+            int size = 0;
+            boolean mergeable = false;
+            for (int j = 0; j < 4; j++) {
+                int exponent = (row >>> (4 * j)) & 0xF;
+                if (exponent == 0)
+                    continue;
+                // every tile merges at most once, as in Board2048.slideArray
+                if (mergeable && line[size - 1] == exponent && exponent < Bitboard2048.MAX_EXPONENT) {
+                    line[size - 1]++;
+                    score += 1 << line[size - 1];
+                    mergeable = false;
+                } else {
+                    line[size++] = exponent;
+                    mergeable = true;
+                }
+            }
+            int result = 0;
+            for (int j = 0; j < size; j++)
+                result |= line[j] << (4 * j);
+
+            int reversed = reverse(row);
+            LEFT[row] = (char) result;
+            SCORE_LEFT[row] = score;
+            CHANGED_LEFT[row] = result != row;
+            RIGHT[reversed] = (char) reverse(result);
+            SCORE_RIGHT[reversed] = score;
+            CHANGED_RIGHT[reversed] = result != row;
+        }
+    }
+
+    private RowTable2048() {
+    }
+
+    static int reverse(int row) {
+        return ((row & 0xF) << 12) | ((row & 0xF0) << 4) | ((row >>> 4) & 0xF0) | ((row >>> 12) & 0xF);
+    }
+}
@@ -0,0 +1,73 @@
+package Game2048;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Slides of a packed row of any length, as RowTable2048 does for 4 cells x
+ * 4 bits. A row of size cells with bits bits per cell is slid in a loop, or
+ * through tables over every possible row when they are small enough (at most
+ * 2^20 rows, 8 MB for both directions); tables are built once per row format
+ * and shared.
+ */
+final class RowTableN {
+    static final int MAX_TABLE_BITS = 20;
+
+    private static final ConcurrentMap<Integer, RowTableN> TABLES = new ConcurrentHashMap<Integer, RowTableN>();
+
+    final int[] left;
+    final int[] right;
+
+    private RowTableN(int size, int bits) {
+        int rows = 1 << (size * bits);
+        left = new int[rows];
+        right = new int[rows];
+        for (int row = 0; row < rows; row++) {
+            left[row] = slide(row, size, bits, true);
+            right[row] = slide(row, size, bits, false);
+        }
+    }
+
+    /**
+     * @return the tables for the row format, or null if they would be too big
+     */
+    static RowTableN get(int size, int bits) {
+        if (size * bits > MAX_TABLE_BITS)
+            return null;
+        return TABLES.computeIfAbsent(size << 8 | bits, key -> new RowTableN(size, bits));
+    }
+
+    /**
+     * Slide a row towards cell 0 (left) or towards its last cell. Every tile
+     * merges at most once, and two tiles of the largest exponent the cells can
+     * hold never merge.
+     */
+    static int slide(int row, int size, int bits, boolean left) {
+        int mask = (1 << bits) - 1;
+        int result = 0;
+        int out = 0;
+        int pending = 0;
+        for (int k = 0; k < size; k++) {
+            int j = left ? k : size - 1 - k;
+            int exponent = (row >>> (bits * j)) & mask;
+            if (exponent == 0)
+                continue;
+            if (pending == exponent && exponent < mask) {
+                result |= (exponent + 1) << (bits * position(out++, size, left));
+                pending = 0;
+            } else {
+                if (pending != 0)
+                    result |= pending << (bits * position(out++, size, left));
+                pending = exponent;
+            }
+        }
+        if (pending != 0)
+            result |= pending << (bits * position(out, size, left));
+        return result;
+    }
+
+    // the cell holding the k-th tile of the slid row
+    private static int position(int k, int size, boolean left) {
+        return left ? k : size - 1 - k;
+    }
+}
@@ -0,0 +1,279 @@
+package Game2048;
+
+import Search.ExpectimaxAI;
+import Search.SearchStats;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Headless self-play: plays complete games with ExpectimaxAI on packed
+ * boards, without the Swing panel, and prints win rate, max tile
+ * distribution, score percentiles, throughput and per-move latency.
+ *
+ * Game i is played from new Random(seed + i), and every game starts with an
+ * empty transposition table, so a run is reproducible whatever the number of
+ * threads.
+ *
+ * Usage: Simulator2048 [-games N] [-threads T] [-seed S] [-depth D] [-table MB]
+ *                      [-weights file] [-heuristic file] [-record file]
+ * (a depth of 0 lets the AI pick the depth of every move, -weights searches
+ * with an NTupleNetwork and -heuristic with tuned HeuristicWeights, -record
+ * appends every game to a GameRecordWriter log for GameRecordAnalyzer)
+ */
+public class Simulator2048 {
+
+    public static class GameResult {
+        public boolean win;
+        public int maxTile;
+        public int score;
+        public int moves;
+    }
+
+    /**
+     * Per-move latencies, bucketed with 32 linear steps per power of two
+     * (about 3% resolution) so that millions of moves fit in a small array.
+     */
+    public static class LatencyHistogram {
+        private static final int SUB_BUCKETS = 32;
+        private final long[] counts = new long[64 * SUB_BUCKETS];
+        private long total;
+
+        public void record(long nanos) {
+            counts[bucket(Math.max(nanos, 1))]++;
+            total++;
+        }
+
+        public void add(LatencyHistogram other) {
+            for (int i = 0; i < counts.length; i++)
+                counts[i] += other.counts[i];
+            total += other.total;
+        }
+
+        public long count() {
+            return total;
+        }
+
+        /**
+         * @return the upper bound, in nanoseconds, of the bucket holding the percentile
+         */
+        public long percentile(double percent) {
+            long rank = (long) Math.ceil(total * percent / 100.0);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank && counts[i] > 0)
+                    return upperBound(i);
+            }
+            return 0;
+        }
+
+        private static int bucket(long nanos) {
+            int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+            if (exponent < 5)
+                return (int) nanos;
+            int sub = (int) (nanos >>> (exponent - 5)) & (SUB_BUCKETS - 1);
+            return (exponent - 4) * SUB_BUCKETS + sub;
+        }
+
+        private static long upperBound(int bucket) {
+            if (bucket < SUB_BUCKETS)
+                return bucket;
+            int exponent = bucket / SUB_BUCKETS + 4;
+            long sub = bucket % SUB_BUCKETS;
+            return ((SUB_BUCKETS + sub + 1) << (exponent - 5)) - 1;
+        }
+    }
+
+    /**
+     * Play one game until the AI reaches 2048 or has no move left.
+     */
+    public static GameResult playGame(ExpectimaxAI ai, long seed, int depth, LatencyHistogram latencies) {
+        return playGame(ai, seed, depth, latencies, null);
+    }
+
+    /**
+     * @param record if not null, started over and filled with the turns of the game
+     */
+    public static GameResult playGame(ExpectimaxAI ai, long seed, int depth, LatencyHistogram latencies,
+                                      GameRecord2048 record) {
+        Random random = new Random(seed);
+        long board = Bitboard2048.spawnRandom(Bitboard2048.spawnRandom(0, random), random);
+        ai.reset(new Board2048(Board2048.AI_PLAYER, board));
+        if (record != null)
+            record.start(seed, board);
+        GameResult result = new GameResult();
+        while (true) {
+            long start = System.nanoTime();
+            int moveDepth = depth > 0 ? depth : ai.chooseDepth(board);
+            int direction = ai.getBestDirection(board, moveDepth);
+            long nanos = System.nanoTime() - start;
+            latencies.record(nanos);
+            if (direction < 0)
+                break;
+            result.score += Bitboard2048.moveScore(board, direction);
+            long moved = Bitboard2048.move(board, direction);
+            result.moves++;
+            result.win = Bitboard2048.isWin(moved);
+            board = result.win ? moved : Bitboard2048.spawnRandom(moved, random);
+            if (record != null)
+                record.turn(direction, ai.getStats().getLastSearch().getDepth(), nanos, moved, board);
+            if (result.win)
+                break;
+        }
+        result.maxTile = Bitboard2048.valueOf(Bitboard2048.maxExponent(board));
+        return result;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int games = 100;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = 2048;
+        int depth = 0;
+        int tableMegabytes = 16;
+        Evaluator2048 evaluator = null;
+        String recordFile = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].equals("-games"))
+                games = Integer.parseInt(args[i + 1]);
+            else if (args[i].equals("-threads"))
+                threads = Integer.parseInt(args[i + 1]);
+            else if (args[i].equals("-seed"))
+                seed = Long.parseLong(args[i + 1]);
+            else if (args[i].equals("-depth"))
+                depth = Integer.parseInt(args[i + 1]);
+            else if (args[i].equals("-table"))
+                tableMegabytes = Integer.parseInt(args[i + 1]);
+            else if (args[i].equals("-weights"))
+                evaluator = NTupleNetwork.load(Paths.get(args[i + 1]));
+            else if (args[i].equals("-heuristic"))
+                evaluator = new Heuristic2048(HeuristicWeights.load(Paths.get(args[i + 1])));
+            else if (args[i].equals("-record"))
+                recordFile = args[i + 1];
+            else
+                throw new IllegalArgumentException("Unknown option: " + args[i]);
+        }
+        if (games <= 0)
+            throw new IllegalArgumentException("Number of games must be positive: " + games);
+
+        final int searchDepth = depth;
+        final int megabytes = tableMegabytes;
+        final long firstSeed = seed;
+        final Evaluator2048 searchEvaluator = evaluator;
+        final List<ExpectimaxAI> allAis = new ArrayList<ExpectimaxAI>();
+        final ThreadLocal<ExpectimaxAI> ais = new ThreadLocal<ExpectimaxAI>() {
+            @Override
+            protected ExpectimaxAI initialValue() {
+                ExpectimaxAI ai = new ExpectimaxAI(new Board2048(Board2048.AI_PLAYER, 0L));
+                ai.setTranspositionTableSize(megabytes);
+                if (searchEvaluator != null)
+                    ai.setEvaluator(searchEvaluator);
+                synchronized (allAis) {
+                    allAis.add(ai);
+                }
+                return ai;
+            }
+        };
+        final List<LatencyHistogram> allHistograms = new ArrayList<LatencyHistogram>();
+        final ThreadLocal<LatencyHistogram> histograms = new ThreadLocal<LatencyHistogram>() {
+            @Override
+            protected LatencyHistogram initialValue() {
+                LatencyHistogram histogram = new LatencyHistogram();
+                synchronized (allHistograms) {
+                    allHistograms.add(histogram);
+                }
+                return histogram;
+            }
+        };
+
+        final GameRecordWriter writer = recordFile != null ? new GameRecordWriter(Paths.get(recordFile)) : null;
+        final ThreadLocal<GameRecord2048> records = ThreadLocal.withInitial(GameRecord2048::new);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<GameResult>> futures = new ArrayList<Future<GameResult>>();
+        long start = System.nanoTime();
+        for (int i = 0; i < games; i++) {
+            final long gameSeed = firstSeed + i;
+            futures.add(executor.submit(() -> {
+                GameRecord2048 record = writer != null ? records.get() : null;
+                GameResult result = playGame(ais.get(), gameSeed, searchDepth, histograms.get(), record);
+                if (writer != null)
+                    writer.write(record);
+                return result;
+            }));
+        }
+        List<GameResult> results = new ArrayList<GameResult>();
+        try {
+            for (Future<GameResult> future : futures)
+                results.add(future.get());
+        } finally {
+            executor.shutdown();
+            if (writer != null)
+                writer.close();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        LatencyHistogram latencies = new LatencyHistogram();
+        for (LatencyHistogram histogram : allHistograms)
+            latencies.add(histogram);
+        report(results, latencies, elapsed, threads);
+        reportSearch(allAis);
+    }
+
+    static void reportSearch(List<ExpectimaxAI> ais) {
+        long nodes = 0, nanos = 0, hits = 0, misses = 0, cutoffs = 0;
+        for (ExpectimaxAI ai : ais) {
+            SearchStats.Snapshot stats = ai.getStats().snapshot();
+            nodes += stats.getNodes();
+            nanos += stats.getNanos();
+            hits += stats.getCacheHits();
+            misses += stats.getCacheMisses();
+            cutoffs += stats.getCutoffs();
+        }
+        System.out.printf("search: %d nodes, %.0f nodes/s per thread, cache hit rate %.1f%%, %d cutoffs%n",
+                nodes, nanos == 0 ? 0 : nodes * 1e9 / nanos,
+                hits + misses == 0 ? 0 : 100.0 * hits / (hits + misses), cutoffs);
+    }
+
+    static void report(List<GameResult> results, LatencyHistogram latencies, long elapsedNanos, int threads) {
+        int wins = 0;
+        long moves = 0;
+        int[] scores = new int[results.size()];
+        TreeMap<Integer, Integer> maxTiles = new TreeMap<Integer, Integer>();
+        for (int i = 0; i < results.size(); i++) {
+            GameResult result = results.get(i);
+            if (result.win)
+                wins++;
+            moves += result.moves;
+            scores[i] = result.score;
+            Integer count = maxTiles.get(result.maxTile);
+            maxTiles.put(result.maxTile, count == null ? 1 : count + 1);
+        }
+        Arrays.sort(scores);
+        int games = results.size();
+
+        System.out.printf("games: %d on %d threads in %.1f s%n", games, threads, elapsedNanos / 1e9);
+        System.out.printf("win rate: %.2f%% (%d/%d)%n", 100.0 * wins / games, wins, games);
+        System.out.println("max tile distribution:");
+        for (Integer tile : maxTiles.descendingKeySet())
+            System.out.printf("  %6d: %6.2f%%%n", tile, 100.0 * maxTiles.get(tile) / games);
+        System.out.printf("score: p10 %d, p50 %d, p90 %d, max %d%n", percentile(scores, 10),
+                percentile(scores, 50), percentile(scores, 90), scores[games - 1]);
+        System.out.printf("moves: %d, %.0f moves/s%n", moves, moves / (elapsedNanos / 1e9));
+        System.out.printf("move latency: p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, p99.9 %.3f ms%n",
+                latencies.percentile(50) / 1e6, latencies.percentile(90) / 1e6,
+                latencies.percentile(99) / 1e6, latencies.percentile(99.9) / 1e6);
+    }
+
+    private static int percentile(int[] sorted, double percent) {
+        int index = (int) Math.ceil(sorted.length * percent / 100.0) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+}
@@ -0,0 +1,278 @@
+package Game2048;
+
+import Game.GameInterface;
+
+/**
+ * A variant of the game: the number of rows and columns (3 to 6) and the
+ * tile that wins (8 to 2^30).
+ *
+ * Boards of a variant are packed into a long[]: every cell holds the
+ * exponent of its tile in 4 bits, or 5 bits when the target needs
+ * exponents above 15, and as many whole rows as fit go into each word. Rows
+ * are slid through RowTableN, with precomputed tables for the row formats
+ * that are small enough.
+ *
+ * The classic 4x4 layout with 4-bit cells is exactly the Bitboard2048
+ * layout, so createBoard() returns the Board2048 fast path for it.
+ */
+public final class Variant2048 {
+    public static final int MIN_SIZE = 3;
+    public static final int MAX_SIZE = 6;
+    public static final int MAX_TARGET_EXPONENT = 30;
+
+    public static final Variant2048 CLASSIC = new Variant2048(4, 2048);
+
+    private final int size;
+    private final int targetExponent;
+    private final int bits;
+    private final int rowBits;
+    private final int rowsPerWord;
+    private final int words;
+    private final long cellMask;
+    private final long rowMask;
+    // null when the rows are too long for tables
+    private final RowTableN table;
+
+    public Variant2048(int size, int target) {
+        if (size < MIN_SIZE || size > MAX_SIZE)
+            throw new IllegalArgumentException("Board size must be from " + MIN_SIZE + " to " + MAX_SIZE + ": " + size);
+        int exponent = Integer.numberOfTrailingZeros(target);
+        if (target <= 0 || Integer.bitCount(target) != 1 || exponent < 3 || exponent > MAX_TARGET_EXPONENT)
+            throw new IllegalArgumentException("Target must be a power of two from 8 to 2^"
+                    + MAX_TARGET_EXPONENT + ": " + target);
+        this.size = size;
+        this.targetExponent = exponent;
+        this.bits = exponent <= Bitboard2048.MAX_EXPONENT ? 4 : 5;
+        this.rowBits = size * bits;
+        this.rowsPerWord = 64 / rowBits;
+        this.words = (size + rowsPerWord - 1) / rowsPerWord;
+        this.cellMask = (1L << bits) - 1;
+        this.rowMask = (1L << rowBits) - 1;
+        this.table = RowTableN.get(size, bits);
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    // bits per cell, 4 or 5
+    int getBits() {
+        return bits;
+    }
+
+    public int getTarget() {
+        return 1 << targetExponent;
+    }
+
+    public int getTargetExponent() {
+        return targetExponent;
+    }
+
+    public int cells() {
+        return size * size;
+    }
+
+    /**
+     * @return the number of longs of a packed board
+     */
+    public int words() {
+        return words;
+    }
+
+    /**
+     * @return a buffer size that holds the moves of any position
+     */
+    public int maxMoves() {
+        return 2 * size * size;
+    }
+
+    /**
+     * Whether boards are packed exactly like Bitboard2048 boards.
+     */
+    public boolean isClassicLayout() {
+        return size == 4 && bits == 4;
+    }
+
+    /**
+     * A new game board, Board2048 for the classic layout and BoardNxN otherwise.
+     */
+    public GameInterface createBoard(String player, int[][] values) {
+        if (isClassicLayout())
+            return new Board2048(player, Bitboard2048.fromArray(values), targetExponent);
+        return new BoardNxN(this, player, values);
+    }
+
+    public long[] newBoard() {
+        return new long[words];
+    }
+
+    public long[] fromArray(int[][] values) {
+        if (values.length != size)
+            throw new IllegalArgumentException("Expected " + size + " rows, got " + values.length);
+        long[] board = newBoard();
+        for (int i = 0; i < size; i++)
+            for (int j = 0; j < size; j++)
+                setCell(board, size * i + j, exponentOf(values[i][j]));
+        return board;
+    }
+
+    public int[][] toArray(long[] board) {
+        int[][] values = new int[size][size];
+        for (int i = 0; i < size; i++)
+            for (int j = 0; j < size; j++)
+                values[i][j] = Bitboard2048.valueOf(getCell(board, size * i + j));
+        return values;
+    }
+
+    public int exponentOf(int value) {
+        if (value <= 0)
+            return 0;
+        int exponent = Integer.numberOfTrailingZeros(value);
+        if (exponent > cellMask || Integer.bitCount(value) != 1)
+            throw new IllegalArgumentException("Not a packable tile: " + value);
+        return exponent;
+    }
+
+    public int getCell(long[] board, int cell) {
+        int i = cell / size;
+        return (int) ((board[i / rowsPerWord] >>> shift(i, cell % size)) & cellMask);
+    }
+
+    public void setCell(long[] board, int cell, int exponent) {
+        int i = cell / size;
+        int shift = shift(i, cell % size);
+        int word = i / rowsPerWord;
+        board[word] = (board[word] & ~(cellMask << shift)) | ((long) exponent << shift);
+    }
+
+    public int getRow(long[] board, int i) {
+        return (int) ((board[i / rowsPerWord] >>> shift(i, 0)) & rowMask);
+    }
+
+    public void setRow(long[] board, int i, int row) {
+        int shift = shift(i, 0);
+        int word = i / rowsPerWord;
+        board[word] = (board[word] & ~(rowMask << shift)) | ((long) row << shift);
+    }
+
+    /**
+     * @return column j packed like a row, with row 0 in the first cell
+     */
+    public int getColumn(long[] board, int j) {
+        int column = 0;
+        for (int i = 0; i < size; i++)
+            column |= getCell(board, size * i + j) << (bits * i);
+        return column;
+    }
+
+    public void setColumn(long[] board, int j, int column) {
+        for (int i = 0; i < size; i++)
+            setCell(board, size * i + j, (int) ((column >>> (bits * i)) & cellMask));
+    }
+
+    /**
+     * Play a Bitboard2048 direction on the board in place.
+     *
+     * @return whether any tile moved
+     */
+    public boolean move(long[] board, int direction) {
+        boolean rows = isRowDirection(direction);
+        boolean left = direction == Bitboard2048.LEFT || direction == Bitboard2048.UP;
+        boolean changed = false;
+        for (int k = 0; k < size; k++) {
+            int line = rows ? getRow(board, k) : getColumn(board, k);
+            int slid = slide(line, left);
+            if (slid != line) {
+                changed = true;
+                if (rows)
+                    setRow(board, k, slid);
+                else
+                    setColumn(board, k, slid);
+            }
+        }
+        return changed;
+    }
+
+    public boolean canMove(long[] board, int direction) {
+        boolean rows = isRowDirection(direction);
+        boolean left = direction == Bitboard2048.LEFT || direction == Bitboard2048.UP;
+        for (int k = 0; k < size; k++) {
+            int line = rows ? getRow(board, k) : getColumn(board, k);
+            if (slide(line, left) != line)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return whether no direction moves any tile
+     */
+    public boolean isTerminal(long[] board) {
+        for (int direction = Bitboard2048.UP; direction <= Bitboard2048.RIGHT; direction++)
+            if (canMove(board, direction))
+                return false;
+        return true;
+    }
+
+    public boolean isWin(long[] board) {
+        return maxExponent(board) >= targetExponent;
+    }
+
+    public int countEmpty(long[] board) {
+        int empty = 0;
+        for (int cell = 0; cell < size * size; cell++)
+            if (getCell(board, cell) == 0)
+                empty++;
+        return empty;
+    }
+
+    public int maxExponent(long[] board) {
+        int max = 0;
+        for (int cell = 0; cell < size * size; cell++)
+            max = Math.max(max, getCell(board, cell));
+        return max;
+    }
+
+    private int slide(int line, boolean left) {
+        if (table != null)
+            return left ? table.left[line] : table.right[line];
+        return RowTableN.slide(line, size, bits, left);
+    }
+
+    private int shift(int i, int j) {
+        return (i % rowsPerWord) * rowBits + j * bits;
+    }
+
+    private static boolean isRowDirection(int direction) {
+        switch (direction) {
+            case Bitboard2048.UP:
+            case Bitboard2048.DOWN:
+                return false;
+            case Bitboard2048.LEFT:
+            case Bitboard2048.RIGHT:
+                return true;
+            default:
+                throw new IllegalArgumentException("Unknown direction: " + direction);
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (!(obj instanceof Variant2048))
+            return false;
+        Variant2048 other = (Variant2048) obj;
+        return size == other.size && targetExponent == other.targetExponent;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * size + targetExponent;
+    }
+
+    @Override
+    public String toString() {
+        return size + "x" + size + " to " + getTarget();
+    }
+}
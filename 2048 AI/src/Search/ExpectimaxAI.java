@@ -0,0 +1,553 @@
+package Search;
+
+import Game.MoveInterface;
+import Game2048.Bitboard2048;
+import Game2048.Board2048;
+import Game2048.Evaluator2048;
+import Game2048.Heuristic2048;
+import Game2048.Move2048;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Expectimax search for 2048 on packed boards.
+ *
+ * Unlike MiniMaxAlphaBetaAI, the tile spawn is not treated as an adversary:
+ * it is a chance node that averages over every empty cell, with a 2 tile
+ * spawned with probability 0.9 and a 4 tile with probability 0.1.
+ *
+ * Chance branches whose path probability drops below minProbability are not
+ * expanded any further, and when no depth is given the depth is chosen per
+ * move from how crowded and how varied the board is.
+ *
+ * Max nodes are cached in a TranspositionTable keyed on the packed board, so
+ * a position reached through different spawn orders is only searched once.
+ * In symmetric mode the table is keyed on the canonical form of the board
+ * (see Bitboard2048.canonicalSymmetry), so the 8 rotations and reflections
+ * of a position share one entry. Board2048.SCORE is not symmetric, so a
+ * shared score is only an estimate for the other 7 positions; this mode is
+ * off by default.
+ *
+ * With a ForkJoinPool set, the root moves and the spawns of their chance
+ * nodes are searched as parallel tasks sharing the table. Only entries whose
+ * subtree was searched to exactly the requested depth without probability
+ * cutoffs are reused then, and scores are always rounded to the float
+ * precision of the table, so a cached score equals a recomputed one and the
+ * chosen move does not depend on thread scheduling. (Symmetric keys give up
+ * that guarantee, since symmetric positions do not score the same.)
+ *
+ * Every search counts its nodes, evaluations, table hits and probability
+ * cutoffs into getStats().
+ *
+ * With batchLeaves, the chance nodes just above the leaves collect the
+ * afterstates of all their spawns and score them with one Evaluator2048
+ * batch call, which the vector module can run on SIMD lanes. The spawns are
+ * all looked up in the table before any of them is stored, so a full table
+ * may keep an entry that one leaf at a time would have evicted first;
+ * otherwise the scores are the same. Batches are not used with symmetric
+ * keys, where spawns share entries.
+ */
+public class ExpectimaxAI {
+    static final double PROBABILITY_TWO = 0.9;
+    static final double PROBABILITY_FOUR = 0.1;
+    // terminal scores, finite so that chance averages never overflow
+    static final double WIN_SCORE = 1e9;
+    static final double LOSE_SCORE = -1e9;
+    static final int DEFAULT_TABLE_MEGABYTES = 32;
+
+    Integer defaultDepth = 3;
+    // pick the depth of every move from the board instead of using defaultDepth
+    boolean adaptiveDepth = true;
+    int minAdaptiveDepth = 2;
+    int maxAdaptiveDepth = 4;
+    // chance branches less likely than this are evaluated instead of expanded
+    double minProbability = 0.01;
+    // the board after our last move, waiting for the computer's tile
+    long now;
+    private Evaluator2048 evaluator = Heuristic2048.getDefault();
+    // null when caching is disabled
+    TranspositionTable table = new TranspositionTable(DEFAULT_TABLE_MEGABYTES);
+    // look boards up by their canonical symmetric form
+    boolean symmetricKeys = false;
+    // score the leaves under a chance node in one evaluator batch
+    boolean batchLeaves = false;
+    // null for a single-threaded search
+    ForkJoinPool pool;
+    private final SearchStats stats = new SearchStats("Expectimax");
+    // the least depth left where a line of the current search stopped
+    private final AtomicInteger lowestRemaining = new AtomicInteger();
+
+    public ExpectimaxAI(Board2048 now) {
+        super();
+        this.now = now.toBitboard();
+    }
+
+    public void setAdaptiveDepth(boolean adaptiveDepth) {
+        this.adaptiveDepth = adaptiveDepth;
+    }
+
+    public void setAdaptiveDepthRange(int minDepth, int maxDepth) {
+        this.minAdaptiveDepth = minDepth;
+        this.maxAdaptiveDepth = maxDepth;
+    }
+
+    public void setMinProbability(double minProbability) {
+        this.minProbability = minProbability;
+    }
+
+    /**
+     * Score leaves with another evaluator, such as an NTupleNetwork.
+     */
+    public void setEvaluator(Evaluator2048 evaluator) {
+        this.evaluator = evaluator;
+        if (table != null)
+            table.clear();
+    }
+
+    public void setSymmetricKeys(boolean symmetricKeys) {
+        this.symmetricKeys = symmetricKeys;
+        if (table != null)
+            table.clear();
+    }
+
+    public void setBatchLeaves(boolean batchLeaves) {
+        this.batchLeaves = batchLeaves;
+    }
+
+    /**
+     * Search in parallel on the pool, or single-threaded if it is null.
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Resize the transposition table, 0 disables it.
+     */
+    public void setTranspositionTableSize(int megabytes) {
+        this.table = megabytes > 0 ? new TranspositionTable(megabytes) : null;
+    }
+
+    /**
+     * @return the counters of every search so far and of the last one
+     */
+    public SearchStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Start over from a new game, forgetting everything cached so far.
+     */
+    public void reset(Board2048 board) {
+        this.now = board.toBitboard();
+        if (table != null)
+            table.clear();
+    }
+
+    public MoveInterface<?> getNextMove(MoveInterface<?> playerMove) {
+        if (!adaptiveDepth)
+            return getNextMove(playerMove, this.defaultDepth);
+        if (playerMove != null) {
+            applyPlayerMove(playerMove);
+        }
+        return getNextMove(null, chooseDepth(now));
+    }
+
+    public MoveInterface<?> getNextMove(MoveInterface<?> playerMove,
+                                        Integer searchDepth) {
+        if (playerMove != null) {
+            applyPlayerMove(playerMove);
+        }
+        int direction = getBestDirection(now, searchDepth);
+        if (direction < 0)
+            return null;
+        now = Bitboard2048.move(now, direction);
+        return Board2048.directionMove(direction);
+    }
+
+    private void applyPlayerMove(MoveInterface<?> playerMove) {
+        int move = Board2048.codeOf(playerMove);
+        if (Move2048.isSpawn(move)) {
+            int cell = Move2048.cellOf(move);
+            now = (now & ~(0xFL << (4 * cell))) | ((long) Move2048.exponentOf(move) << (4 * cell));
+        } else {
+            now = Bitboard2048.move(now, Move2048.directionOf(move));
+        }
+    }
+
+    /**
+     * Crowded boards with many different tiles are the dangerous ones and have
+     * few spawn branches, so they get the deep searches. Open boards are
+     * searched shallowly, since every extra level multiplies by their many
+     * empty cells.
+     */
+    public int chooseDepth(long board) {
+        int distinct = 0;
+        int seen = 0;
+        for (int cell = 0; cell < Bitboard2048.CELLS; cell++) {
+            int exponent = Bitboard2048.getCell(board, cell);
+            if (exponent != 0 && (seen & (1 << exponent)) == 0) {
+                seen |= 1 << exponent;
+                distinct++;
+            }
+        }
+        int depth = distinct - 2;
+        if (Bitboard2048.countEmpty(board) >= 8)
+            depth--;
+        return Math.max(minAdaptiveDepth, Math.min(maxAdaptiveDepth, depth));
+    }
+
+    /**
+     * @return the best direction cached for the board by an earlier search, or
+     * -1 if there is none
+     */
+    public int getCachedDirection(long board) {
+        if (table == null)
+            return -1;
+        int symmetry = symmetricKeys ? Bitboard2048.canonicalSymmetry(board) : 0;
+        long entry = table.probe(Bitboard2048.transform(board, symmetry));
+        if (entry == 0 || TranspositionTable.moveOf(entry) == TranspositionTable.NO_MOVE)
+            return -1;
+        return Bitboard2048.inverseTransformDirection(TranspositionTable.moveOf(entry), symmetry);
+    }
+
+    /**
+     * @return the best Bitboard2048 direction for the board, or -1 if no move is possible
+     */
+    public int getBestDirection(long board, int searchDepth) {
+        stats.beginSearch();
+        if (table != null)
+            table.newSearch();
+        lowestRemaining.set(searchDepth);
+        double[] scores;
+        if (pool == null) {
+            Searcher searcher = new Searcher();
+            scores = searcher.rootScores(board, searchDepth);
+            searcher.flush();
+        } else {
+            scores = pool.invoke(new RootTask(board, searchDepth));
+        }
+        double maxScore = Double.NEGATIVE_INFINITY;
+        int bestDirection = -1;
+        for (int direction = Bitboard2048.UP; direction <= Bitboard2048.RIGHT; direction++) {
+            if (scores[direction] > maxScore) {
+                maxScore = scores[direction];
+                bestDirection = direction;
+            }
+        }
+        if (table != null && bestDirection >= 0)
+            storeEntry(board, symmetricKeys ? Bitboard2048.canonicalSymmetry(board) : 0,
+                    searchDepth, maxScore, bestDirection, false);
+        // lines cut off by minProbability or by a full board may not get to the depth asked for
+        stats.endSearch(bestDirection < 0 ? 0 : searchDepth - lowestRemaining.get());
+        return bestDirection;
+    }
+
+    // moves are stored as seen on the canonical board
+    private void storeEntry(long board, int symmetry, int depth, double score, int direction, boolean complete) {
+        if (direction != TranspositionTable.NO_MOVE)
+            direction = Bitboard2048.transformDirection(direction, symmetry);
+        table.store(Bitboard2048.transform(board, symmetry), depth, score, direction, complete);
+    }
+
+    private double evaluate(long board) {
+        return bounded(evaluator.evaluate(board));
+    }
+
+    private static double bounded(double score) {
+        if (score == Double.MAX_VALUE)
+            return WIN_SCORE;
+        if (score == -Double.MAX_VALUE)
+            return LOSE_SCORE;
+        return score;
+    }
+
+    /**
+     * The recursive search. Each thread uses its own Searcher, which tracks
+     * whether the subtree being searched was cut off by minProbability, and
+     * counts into plain fields until flush().
+     */
+    private class Searcher {
+        boolean truncated;
+        long nodes;
+        long evaluations;
+        long cacheHits;
+        long cacheMisses;
+        long cutoffs;
+        int lowest = Integer.MAX_VALUE;
+
+        void flush() {
+            stats.add(nodes, evaluations, cacheHits, cacheMisses, cutoffs);
+            nodes = evaluations = cacheHits = cacheMisses = cutoffs = 0;
+            if (lowest < Integer.MAX_VALUE)
+                lowestRemaining.accumulateAndGet(lowest, Math::min);
+        }
+
+        // a line of the search stopped with this depth left
+        void reach(int remaining) {
+            if (remaining < lowest)
+                lowest = remaining;
+        }
+
+        double leaf(long board) {
+            evaluations++;
+            return evaluate(board);
+        }
+
+        // the chance value of every direction, -infinity for impossible moves
+        double[] rootScores(long board, int depth) {
+            double[] scores = new double[4];
+            for (int direction = Bitboard2048.UP; direction <= Bitboard2048.RIGHT; direction++) {
+                scores[direction] = Bitboard2048.canMove(board, direction)
+                        ? chanceValue(Bitboard2048.move(board, direction), depth, 1.0)
+                        : Double.NEGATIVE_INFINITY;
+            }
+            return scores;
+        }
+
+        double maxValue(long board, int depth, double probability) {
+            int symmetry = table != null && symmetricKeys ? Bitboard2048.canonicalSymmetry(board) : 0;
+            if (table != null) {
+                long entry = table.probe(Bitboard2048.transform(board, symmetry));
+                if (entry != 0 && usable(entry, depth)) {
+                    cacheHits++;
+                    reach(Math.max(0, depth - TranspositionTable.depthOf(entry)));
+                    return TranspositionTable.scoreOf(entry);
+                }
+                cacheMisses++;
+            }
+            nodes++;
+            boolean outerTruncated = truncated;
+            truncated = false;
+            double maxScore = Double.NEGATIVE_INFINITY;
+            int bestDirection = TranspositionTable.NO_MOVE;
+            for (int direction = Bitboard2048.UP; direction <= Bitboard2048.RIGHT; direction++) {
+                if (!Bitboard2048.canMove(board, direction))
+                    continue;
+                double score = chanceValue(Bitboard2048.move(board, direction), depth, probability);
+                if (score > maxScore) {
+                    maxScore = score;
+                    bestDirection = direction;
+                }
+            }
+            if (bestDirection == TranspositionTable.NO_MOVE)
+                maxScore = leaf(board);
+            // the table keeps floats, so cached and searched scores must agree
+            maxScore = (float) maxScore;
+            if (table != null)
+                storeEntry(board, symmetry, depth, maxScore, bestDirection, !truncated);
+            truncated |= outerTruncated;
+            return maxScore;
+        }
+
+        private boolean usable(long entry, int depth) {
+            if (pool == null)
+                return TranspositionTable.depthOf(entry) >= depth;
+            return TranspositionTable.depthOf(entry) == depth && TranspositionTable.isComplete(entry);
+        }
+
+        double chanceValue(long board, int depth, double probability) {
+            if (depth == 0) {
+                reach(0);
+                return leaf(board);
+            }
+            if (probability < minProbability) {
+                truncated = true;
+                cutoffs++;
+                reach(depth);
+                return leaf(board);
+            }
+            int empty = Bitboard2048.countEmpty(board);
+            if (empty == 0) {
+                reach(depth);
+                return leaf(board);
+            }
+            nodes++;
+            if (depth == 1 && batchLeaves && !symmetricKeys) {
+                reach(0);
+                return batchChanceValue(board, empty);
+            }
+
+            double twoProbability = probability * PROBABILITY_TWO / empty;
+            double fourProbability = probability * PROBABILITY_FOUR / empty;
+            double sum = 0;
+            for (int cell = 0; cell < Bitboard2048.CELLS; cell++) {
+                if (Bitboard2048.getCell(board, cell) != 0)
+                    continue;
+                sum += PROBABILITY_TWO * maxValue(Bitboard2048.spawn(board, cell, 1), depth - 1, twoProbability);
+                sum += PROBABILITY_FOUR * maxValue(Bitboard2048.spawn(board, cell, 2), depth - 1, fourProbability);
+            }
+            return sum / empty;
+        }
+
+        // the spawns of a batched chance node and the afterstates to score
+        private long[] spawns;
+        private double[] spawnScores;
+        private int[] firstLeaf;
+        private int[] endLeaf;
+        private long[] leaves;
+        private int[] leafDirections;
+        private double[] leafScores;
+
+        /**
+         * chanceValue at depth 1: every spawn is looked up in the table, the
+         * afterstates of those that miss are scored in one batch, and each
+         * spawn is then reduced and stored as maxValue would.
+         */
+        private double batchChanceValue(long board, int empty) {
+            if (spawns == null) {
+                spawns = new long[2 * Bitboard2048.CELLS];
+                spawnScores = new double[2 * Bitboard2048.CELLS];
+                firstLeaf = new int[2 * Bitboard2048.CELLS];
+                endLeaf = new int[2 * Bitboard2048.CELLS];
+                leaves = new long[8 * Bitboard2048.CELLS];
+                leafDirections = new int[8 * Bitboard2048.CELLS];
+                leafScores = new double[8 * Bitboard2048.CELLS];
+            }
+            int count = 0;
+            int leafCount = 0;
+            for (int cell = 0; cell < Bitboard2048.CELLS; cell++) {
+                if (Bitboard2048.getCell(board, cell) != 0)
+                    continue;
+                for (int exponent = 1; exponent <= 2; exponent++, count++) {
+                    long spawned = Bitboard2048.spawn(board, cell, exponent);
+                    spawns[count] = spawned;
+                    firstLeaf[count] = -1;
+                    if (table != null) {
+                        long entry = table.probe(spawned);
+                        if (entry != 0 && usable(entry, 0)) {
+                            cacheHits++;
+                            spawnScores[count] = TranspositionTable.scoreOf(entry);
+                            continue;
+                        }
+                        cacheMisses++;
+                    }
+                    nodes++;
+                    firstLeaf[count] = leafCount;
+                    for (int direction = Bitboard2048.UP; direction <= Bitboard2048.RIGHT; direction++) {
+                        if (Bitboard2048.canMove(spawned, direction)) {
+                            leaves[leafCount] = Bitboard2048.move(spawned, direction);
+                            leafDirections[leafCount++] = direction;
+                        }
+                    }
+                    if (leafCount == firstLeaf[count]) {
+                        // no move left, the board itself is scored
+                        leaves[leafCount] = spawned;
+                        leafDirections[leafCount++] = TranspositionTable.NO_MOVE;
+                    }
+                    endLeaf[count] = leafCount;
+                }
+            }
+            evaluations += leafCount;
+            evaluator.evaluate(leaves, leafCount, leafScores);
+
+            double sum = 0;
+            for (int k = 0; k < count; k++) {
+                double score = spawnScores[k];
+                if (firstLeaf[k] >= 0) {
+                    double maxScore = Double.NEGATIVE_INFINITY;
+                    int bestDirection = TranspositionTable.NO_MOVE;
+                    for (int leaf = firstLeaf[k]; leaf < endLeaf[k]; leaf++) {
+                        double leafScore = bounded(leafScores[leaf]);
+                        if (leafScore > maxScore || leafDirections[leaf] == TranspositionTable.NO_MOVE) {
+                            maxScore = leafScore;
+                            bestDirection = leafDirections[leaf];
+                        }
+                    }
+                    score = (float) maxScore;
+                    if (table != null)
+                        storeEntry(spawns[k], 0, 0, score, bestDirection, true);
+                }
+                sum += ((k & 1) == 0 ? PROBABILITY_TWO : PROBABILITY_FOUR) * score;
+            }
+            return sum / empty;
+        }
+    }
+
+    /**
+     * Splits the root into one task per spawn of every possible move and
+     * adds the results up in the same order as the sequential search.
+     */
+    private class RootTask extends RecursiveTask<double[]> {
+        private static final long serialVersionUID = 1L;
+
+        final long board;
+        final int depth;
+
+        RootTask(long board, int depth) {
+            this.board = board;
+            this.depth = depth;
+        }
+
+        @Override
+        protected double[] compute() {
+            Searcher searcher = new Searcher();
+            double[] scores = new double[4];
+            List<List<SpawnTask>> spawns = new ArrayList<List<SpawnTask>>();
+            List<SpawnTask> all = new ArrayList<SpawnTask>();
+            for (int direction = Bitboard2048.UP; direction <= Bitboard2048.RIGHT; direction++) {
+                List<SpawnTask> tasks = new ArrayList<SpawnTask>();
+                spawns.add(tasks);
+                if (!Bitboard2048.canMove(board, direction)) {
+                    scores[direction] = Double.NEGATIVE_INFINITY;
+                    continue;
+                }
+                long next = Bitboard2048.move(board, direction);
+                int empty = Bitboard2048.countEmpty(next);
+                if (depth == 0 || empty == 0) {
+                    searcher.reach(depth);
+                    scores[direction] = searcher.leaf(next);
+                    continue;
+                }
+                searcher.nodes++;
+                for (int cell = 0; cell < Bitboard2048.CELLS; cell++) {
+                    if (Bitboard2048.getCell(next, cell) != 0)
+                        continue;
+                    tasks.add(new SpawnTask(Bitboard2048.spawn(next, cell, 1), depth - 1, PROBABILITY_TWO / empty));
+                    tasks.add(new SpawnTask(Bitboard2048.spawn(next, cell, 2), depth - 1, PROBABILITY_FOUR / empty));
+                }
+                all.addAll(tasks);
+            }
+            searcher.flush();
+            invokeAll(all);
+            for (int direction = Bitboard2048.UP; direction <= Bitboard2048.RIGHT; direction++) {
+                List<SpawnTask> tasks = spawns.get(direction);
+                if (tasks.isEmpty())
+                    continue;
+                double sum = 0;
+                for (int i = 0; i < tasks.size(); i += 2) {
+                    sum += PROBABILITY_TWO * tasks.get(i).join();
+                    sum += PROBABILITY_FOUR * tasks.get(i + 1).join();
+                }
+                scores[direction] = sum / (tasks.size() / 2);
+            }
+            return scores;
+        }
+    }
+
+    private class SpawnTask extends RecursiveTask<Double> {
+        private static final long serialVersionUID = 1L;
+
+        final long board;
+        final int depth;
+        final double probability;
+
+        SpawnTask(long board, int depth, double probability) {
+            this.board = board;
+            this.depth = depth;
+            this.probability = probability;
+        }
+
+        @Override
+        protected Double compute() {
+            Searcher searcher = new Searcher();
+            double score = searcher.maxValue(board, depth, probability);
+            searcher.flush();
+            return score;
+        }
+    }
+}
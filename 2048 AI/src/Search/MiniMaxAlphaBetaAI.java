@@ -3,14 +3,53 @@ package Search;
 import Game.GameInterface;
 import Game.MoveInterface;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Created by gejing on 3/19/16.
+ *
+ * This search runs on one thread. The parallel search for 2048 is
+ * ExpectimaxAI with a ForkJoinPool (see ExpectimaxAI.setPool): only
+ * expectimax has chance nodes whose spawns are independent tasks, and a
+ * transposition table for them to share.
  */
 public class MiniMaxAlphaBetaAI {
     Integer defaultDepth = 3;
     SearchNode now;
+    // the search tree kept between moves holds at most this many nodes
+    int maxRetainedNodes = 200000;
+    int retainedNodes = 1;
+    // time-budgeted search: deepen until the deadline (System.nanoTime), 0 when unlimited
+    int maxIterativeDepth = 12;
+    long deadline;
+    int lastCompletedDepth = -1;
+
+    private static final class SearchTimeout extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        SearchTimeout() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final SearchTimeout TIMEOUT = new SearchTimeout();
+
+    // room for the moves of one position in the in-place search (2048 has at most 32)
+    private static final int MOVE_BUFFER = 64;
+    // move buffers of the in-place search, one per ply
+    private int[][] moveBuffers = new int[0][];
+
+    private final SearchStats stats = new SearchStats("MiniMax");
+    // counts of the running search, added to stats when it ends
+    private long nodes;
+    private long evaluations;
+    private long cacheHits;
+    private long cacheMisses;
+    private long cutoffs;
 
     public MiniMaxAlphaBetaAI(GameInterface now) {
         super();
@@ -20,6 +59,10 @@ public class MiniMaxAlphaBetaAI {
     private class SearchNode {
         GameInterface stage;
         HashMap<MoveInterface<?>, SearchNode> nextStages = new HashMap<MoveInterface<?>, SearchNode>();
+        // the node this one was reached from, null for the root
+        SearchNode parent;
+        // nodes kept in the subtree of this one, itself included
+        int size = 1;
 
         public SearchNode(GameInterface stage) {
             super();
@@ -27,7 +70,102 @@ public class MiniMaxAlphaBetaAI {
         }
     }
 
+    public void setMaxRetainedNodes(int maxRetainedNodes) {
+        this.maxRetainedNodes = maxRetainedNodes;
+        trim();
+    }
+
+    /**
+     * @return the counters of every search so far and of the last one; cache
+     * hits are children found in the search tree kept from earlier moves
+     */
+    public SearchStats getStats() {
+        return stats;
+    }
+
+    /**
+     * @return the number of search nodes kept for reuse by the next move
+     */
+    public int getRetainedNodes() {
+        return retainedNodes;
+    }
+
+    /**
+     * Get the child reached by the move, creating it if needed. Once the
+     * budget is used up, new children are still returned but not kept.
+     */
+    private SearchNode child(SearchNode node, MoveInterface<?> move) {
+        SearchNode next = node.nextStages.get(move);
+        if (next != null) {
+            cacheHits++;
+        } else {
+            cacheMisses++;
+            next = new SearchNode(node.stage.moveToNext(move));
+            if (retainedNodes < maxRetainedNodes) {
+                node.nextStages.put(move, next);
+                next.parent = node;
+                for (SearchNode ancestor = node; ancestor != null; ancestor = ancestor.parent)
+                    ancestor.size++;
+                retainedNodes++;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Make the node the new root. Its siblings become unreachable, so the
+     * retained count is the size of the new subtree; the tree is only walked
+     * when that has hit the budget.
+     */
+    private void descend(SearchNode node) {
+        now = node;
+        now.parent = null;
+        retainedNodes = now.size;
+        if (retainedNodes >= maxRetainedNodes)
+            trim();
+    }
+
+    /**
+     * Drop the deepest levels of the tree under now until it fits in half of
+     * the budget, and count the subtree sizes again.
+     */
+    private void trim() {
+        List<List<SearchNode>> levels = new ArrayList<List<SearchNode>>();
+        List<SearchNode> level = new ArrayList<SearchNode>();
+        level.add(now);
+        int nodes = 0;
+        while (!level.isEmpty()) {
+            levels.add(level);
+            nodes += level.size();
+            List<SearchNode> next = new ArrayList<SearchNode>();
+            for (SearchNode node : level)
+                next.addAll(node.nextStages.values());
+            level = next;
+        }
+        int kept = levels.size();
+        if (nodes >= maxRetainedNodes) {
+            for (; kept > 1 && nodes > maxRetainedNodes / 2; kept--) {
+                nodes -= levels.get(kept - 1).size();
+                for (SearchNode parent : levels.get(kept - 2))
+                    parent.nextStages.clear();
+            }
+        }
+        for (int depth = kept - 1; depth >= 0; depth--) {
+            for (SearchNode node : levels.get(depth)) {
+                int size = 1;
+                for (SearchNode next : node.nextStages.values())
+                    size += next.size;
+                node.size = size;
+            }
+        }
+        retainedNodes = nodes;
+    }
+
     private Double getScore(SearchNode now, Integer searchDepth, Double beta) {
+        // a node builds and scores all its children, so the clock is cheap next to it
+        if (deadline != 0 && System.nanoTime() > deadline)
+            throw TIMEOUT;
+        nodes++;
         Double score;
         if (now.stage.getToPlay().equals("AI")) {
             score = Double.MIN_VALUE;
@@ -38,37 +176,27 @@ public class MiniMaxAlphaBetaAI {
             return 0.0;
         } else if (searchDepth == 0) {
             for (MoveInterface<?> move : now.stage.getPossibleMoves()) {
-                GameInterface next;
-                if (now.nextStages.get(move) != null) {
-                    next = now.nextStages.get(move).stage;
-                } else {
-                    next = now.stage.moveToNext(move);
-                    now.nextStages.put(move, new SearchNode(next));
-                }
-                if (next.getScore() > score) {
-                    score = next.getScore();
+                Double nextScore = evaluate(child(now, move).stage);
+                if (nextScore > score) {
+                    score = nextScore;
                 }
             }
         } else {
             for (MoveInterface<?> move : now.stage.getPossibleMoves()) {
-                if (now.nextStages.get(move) == null) {
-                    now.nextStages.put(move,
-                            new SearchNode(now.stage.moveToNext(move)));
-                }
+                SearchNode next = child(now, move);
                 if (now.stage.getToPlay().equals("AI")) {
-                    Double nextScore = getScore(now.nextStages.get(move),
-                            searchDepth, score)
-                            + now.nextStages.get(move).stage.getScore();
+                    Double nextScore = getScore(next, searchDepth, score)
+                            + evaluate(next.stage);
                     if (nextScore > score) {
                         score = nextScore;
                     }
                 } else {
-                    Double nextScore = getScore(now.nextStages.get(move),
-                            searchDepth - 1, score);
+                    Double nextScore = getScore(next, searchDepth - 1, score);
                     if (nextScore < score) {
                         score = nextScore;
                     }
                     if (score <= beta){
+                        cutoffs++;
                         return score;
                     }
                 }
@@ -77,35 +205,203 @@ public class MiniMaxAlphaBetaAI {
         return score;
     }
 
+    private double evaluate(GameInterface stage) {
+        evaluations++;
+        return stage.getScore();
+    }
+
+    private void endSearch(int depth) {
+        stats.add(nodes, evaluations, cacheHits, cacheMisses, cutoffs);
+        nodes = evaluations = cacheHits = cacheMisses = cutoffs = 0;
+        stats.endSearch(depth);
+    }
+
     public MoveInterface<?> getNextMove(MoveInterface<?> playerMove) {
         return getNextMove(playerMove, this.defaultDepth);
     }
 
     public MoveInterface<?> getNextMove(MoveInterface<?> playerMove,
                                         Integer searchDepth) {
+        stats.beginSearch();
         Double maxScore = Double.MIN_VALUE;
         MoveInterface<?> nextMove = null;
+        applyPlayerMove(playerMove);
+        SearchNode nextNode = null;
+        for (MoveInterface<?> move : now.stage.getPossibleMoves()) {
+            SearchNode next = child(now, move);
+            Double moveScore = getScore(next, searchDepth, Double.MIN_VALUE)
+                    + evaluate(next.stage);
+            if (moveScore > maxScore) {
+                maxScore = moveScore;
+                nextMove = move;
+                nextNode = next;
+            }
+        }
+        if (nextNode != null)
+            descend(nextNode);
+        endSearch(searchDepth);
+        return nextMove;
+    }
+
+    private void applyPlayerMove(MoveInterface<?> playerMove) {
         if (playerMove != null) {
             if (now.nextStages.get(playerMove) == null) {
-                GameInterface next = now.stage.moveToNext(playerMove);
-                now.nextStages.put(playerMove, new SearchNode(next));
+                child(now, playerMove);
             } else {
-                now = now.nextStages.get(playerMove);
+                descend(now.nextStages.get(playerMove));
             }
         }
-        for (MoveInterface<?> move : now.stage.getPossibleMoves()) {
-            if (now.nextStages.get(move) == null) {
-                now.nextStages.put(move,
-                        new SearchNode(now.stage.moveToNext(move)));
+    }
+
+    /**
+     * Same search and same answer as getNextMove, but played on the root
+     * position itself with doMove/undoMove and int moves, so the search
+     * creates no boards, move objects or tree nodes. Nothing is cached for
+     * the next move apart from the root.
+     */
+    public MoveInterface<?> getNextMoveInPlace(MoveInterface<?> playerMove, int searchDepth) {
+        stats.beginSearch();
+        applyPlayerMove(playerMove);
+        GameInterface stage = now.stage;
+        int[] moves = moveBuffer(0);
+        int count = stage.getPossibleMoves(moves);
+        double maxScore = Double.MIN_VALUE;
+        int best = -1;
+        for (int i = 0; i < count; i++) {
+            stage.doMove(moves[i]);
+            try {
+                double moveScore = scoreInPlace(stage, searchDepth, Double.MIN_VALUE, 1) + evaluate(stage);
+                if (moveScore > maxScore) {
+                    maxScore = moveScore;
+                    best = i;
+                }
+            } finally {
+                stage.undoMove();
+            }
+        }
+        if (best < 0) {
+            endSearch(searchDepth);
+            return null;
+        }
+        MoveInterface<?> bestMove = stage.getPossibleMoves().get(best);
+        descend(child(now, bestMove));
+        endSearch(searchDepth);
+        return bestMove;
+    }
+
+    // getScore on a position that is moved into and back out of every child
+    private double scoreInPlace(GameInterface stage, int searchDepth, double beta, int ply) {
+        nodes++;
+        int[] moves = moveBuffer(ply);
+        int count = stage.getPossibleMoves(moves);
+        if (count == 0)
+            return 0.0;
+        boolean aiToPlay = stage.getToPlay().equals("AI");
+        double score = aiToPlay ? Double.MIN_VALUE : Double.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            stage.doMove(moves[i]);
+            try {
+                if (searchDepth == 0) {
+                    double nextScore = evaluate(stage);
+                    if (nextScore > score)
+                        score = nextScore;
+                } else if (aiToPlay) {
+                    double nextScore = scoreInPlace(stage, searchDepth, score, ply + 1) + evaluate(stage);
+                    if (nextScore > score)
+                        score = nextScore;
+                } else {
+                    double nextScore = scoreInPlace(stage, searchDepth - 1, score, ply + 1);
+                    if (nextScore < score)
+                        score = nextScore;
+                    if (score <= beta) {
+                        cutoffs++;
+                        return score;
+                    }
+                }
+            } finally {
+                stage.undoMove();
             }
-            Double moveScore = getScore(now.nextStages.get(move), searchDepth, Double.MIN_VALUE)
-                    + now.nextStages.get(move).stage.getScore();
+        }
+        return score;
+    }
+
+    private int[] moveBuffer(int ply) {
+        if (ply >= moveBuffers.length) {
+            int[][] buffers = new int[ply + 8][];
+            System.arraycopy(moveBuffers, 0, buffers, 0, moveBuffers.length);
+            for (int i = moveBuffers.length; i < buffers.length; i++)
+                buffers[i] = new int[MOVE_BUFFER];
+            moveBuffers = buffers;
+        }
+        return moveBuffers[ply];
+    }
+
+    public void setMaxIterativeDepth(int maxIterativeDepth) {
+        this.maxIterativeDepth = maxIterativeDepth;
+    }
+
+    /**
+     * @return the depth of the last iteration getNextMoveWithin completed
+     */
+    public int getLastCompletedDepth() {
+        return lastCompletedDepth;
+    }
+
+    /**
+     * Iterative deepening under a wall-clock budget: search depth 0, 1, 2...
+     * until the time is up, then play the best move of the last iteration that
+     * finished. An iteration still running at the deadline is abandoned. Every
+     * iteration tries the moves in the order of the previous iteration's
+     * scores, and bounds each move by the best score found so far.
+     */
+    public MoveInterface<?> getNextMoveWithin(MoveInterface<?> playerMove, long timeBudgetMillis) {
+        stats.beginSearch();
+        applyPlayerMove(playerMove);
+        List<MoveInterface<?>> moves = now.stage.getPossibleMoves();
+        lastCompletedDepth = -1;
+        if (moves.isEmpty()) {
+            endSearch(lastCompletedDepth);
+            return null;
+        }
+
+        MoveInterface<?> bestMove = moves.get(0);
+        deadline = System.nanoTime() + timeBudgetMillis * 1000000L;
+        try {
+            Map<MoveInterface<?>, Double> scores = new HashMap<MoveInterface<?>, Double>();
+            for (int depth = 0; depth <= maxIterativeDepth; depth++) {
+                final Map<MoveInterface<?>, Double> previous = scores;
+                Collections.sort(moves, (a, b) -> Double.compare(
+                        previous.containsKey(b) ? previous.get(b) : Double.NEGATIVE_INFINITY,
+                        previous.containsKey(a) ? previous.get(a) : Double.NEGATIVE_INFINITY));
+                scores = new HashMap<MoveInterface<?>, Double>();
+                bestMove = searchRoot(moves, depth, scores);
+                lastCompletedDepth = depth;
+            }
+        } catch (SearchTimeout e) {
+            // keep the move of the last completed iteration
+        } finally {
+            deadline = 0;
+        }
+        descend(child(now, bestMove));
+        endSearch(lastCompletedDepth);
+        return bestMove;
+    }
+
+    private MoveInterface<?> searchRoot(List<MoveInterface<?>> moves, int depth,
+                                        Map<MoveInterface<?>, Double> scores) {
+        Double maxScore = Double.NEGATIVE_INFINITY;
+        MoveInterface<?> bestMove = moves.get(0);
+        for (MoveInterface<?> move : moves) {
+            SearchNode next = child(now, move);
+            Double stageScore = evaluate(next.stage);
+            // a move whose reply is already worse than the best one can stop early
+            Double moveScore = getScore(next, depth, maxScore - stageScore) + stageScore;
+            scores.put(move, moveScore);
             if (moveScore > maxScore) {
                 maxScore = moveScore;
-                nextMove = move;
+                bestMove = move;
             }
         }
-        now = now.nextStages.get(nextMove);
-        return nextMove;
+        return bestMove;
     }
 }
@@ -0,0 +1,350 @@
+package Search;
+
+import Game.MoveInterface;
+import Game2048.Bitboard2048;
+import Game2048.Board2048;
+import Game2048.Evaluator2048;
+import Game2048.Heuristic2048;
+import Game2048.Move2048;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Monte Carlo tree search for 2048 on packed boards, with the same
+ * getNextMove contract as MiniMaxAlphaBetaAI and ExpectimaxAI.
+ *
+ * The tree is open loop: a node stands for a sequence of our moves, and the
+ * computer's tiles are drawn again at random on every iteration, so the
+ * tree stays small however many spawns are possible. Children are picked
+ * with UCB1, the exploration term scaled by the parent's mean reward, and
+ * the reward of an iteration is the score of its moves plus a rollout to
+ * the end of the game: random moves, or greedy moves on the evaluator.
+ *
+ * With a ForkJoinPool set, the search is root parallel: every worker of the
+ * pool grows its own tree from the root with its own random numbers, and
+ * the root visits of all trees are added up. Workers share nothing, so the
+ * search scales with the cores. A move stops at the rollout budget or the
+ * time budget, whichever comes first; with a rollout budget only, the move
+ * chosen depends only on the seed and the number of workers.
+ */
+public class MonteCarloAI {
+    public enum Rollout {
+        RANDOM, GREEDY
+    }
+
+    static final int DEFAULT_ROLLOUTS = 4000;
+
+    // the board after our last move, waiting for the computer's tile
+    long now;
+    // rollouts per move, 0 for no limit
+    int rollouts = DEFAULT_ROLLOUTS;
+    // milliseconds per move, 0 for no limit
+    long timeBudgetMillis;
+    // moves per rollout, 0 to play until the game is over
+    int rolloutDepth;
+    double exploration = Math.sqrt(2);
+    Rollout rollout = Rollout.RANDOM;
+    private Evaluator2048 evaluator = Heuristic2048.getDefault();
+    // null for a single-threaded search
+    ForkJoinPool pool;
+    long seed = 2048;
+    private long searches;
+    private final SearchStats stats = new SearchStats("MonteCarlo");
+
+    public MonteCarloAI(Board2048 now) {
+        super();
+        this.now = now.toBitboard();
+    }
+
+    public void setRollouts(int rollouts) {
+        this.rollouts = rollouts;
+    }
+
+    public void setTimeBudget(long timeBudgetMillis) {
+        this.timeBudgetMillis = timeBudgetMillis;
+    }
+
+    public void setRolloutDepth(int rolloutDepth) {
+        this.rolloutDepth = rolloutDepth;
+    }
+
+    public void setExploration(double exploration) {
+        this.exploration = exploration;
+    }
+
+    public void setRollout(Rollout rollout) {
+        this.rollout = rollout;
+    }
+
+    /**
+     * Pick the moves of greedy rollouts with another evaluator.
+     */
+    public void setEvaluator(Evaluator2048 evaluator) {
+        this.evaluator = evaluator;
+    }
+
+    /**
+     * Search in parallel on the pool, or single-threaded if it is null.
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+        this.searches = 0;
+    }
+
+    /**
+     * @return the counters of every search so far and of the last one; nodes
+     * are tree nodes created and evaluations are rollouts
+     */
+    public SearchStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Start over from a new game.
+     */
+    public void reset(Board2048 board) {
+        this.now = board.toBitboard();
+    }
+
+    public MoveInterface<?> getNextMove(MoveInterface<?> playerMove) {
+        return getNextMove(playerMove, this.rollouts);
+    }
+
+    /**
+     * @param rollouts the rollout budget of this move, 0 for the time budget only
+     */
+    public MoveInterface<?> getNextMove(MoveInterface<?> playerMove, Integer rollouts) {
+        if (playerMove != null) {
+            applyPlayerMove(playerMove);
+        }
+        int direction = getBestDirection(now, rollouts, timeBudgetMillis);
+        if (direction < 0)
+            return null;
+        now = Bitboard2048.move(now, direction);
+        return Board2048.directionMove(direction);
+    }
+
+    private void applyPlayerMove(MoveInterface<?> playerMove) {
+        int move = Board2048.codeOf(playerMove);
+        if (Move2048.isSpawn(move)) {
+            int cell = Move2048.cellOf(move);
+            now = (now & ~(0xFL << (4 * cell))) | ((long) Move2048.exponentOf(move) << (4 * cell));
+        } else {
+            now = Bitboard2048.move(now, Move2048.directionOf(move));
+        }
+    }
+
+    /**
+     * @return the most visited Bitboard2048 direction for the board, or -1 if
+     * no move is possible
+     */
+    public int getBestDirection(long board, int rollouts, long timeBudgetMillis) {
+        if (rollouts <= 0 && timeBudgetMillis <= 0)
+            throw new IllegalStateException("Monte Carlo search needs a rollout or a time budget");
+        if (Bitboard2048.isTerminal(board))
+            return -1;
+        stats.beginSearch();
+        long deadline = timeBudgetMillis > 0 ? System.nanoTime() + timeBudgetMillis * 1000000L : 0;
+        long searchSeed = seed + 0x9E3779B97F4A7C15L * ++searches;
+        int workers = pool == null ? 1 : pool.getParallelism();
+
+        List<Worker> done = new ArrayList<Worker>();
+        if (workers == 1) {
+            done.add(new Worker(board, rollouts, deadline, searchSeed).call());
+        } else {
+            List<Callable<Worker>> tasks = new ArrayList<Callable<Worker>>();
+            for (int w = 0; w < workers; w++) {
+                // the budget is split evenly, the first workers taking the remainder
+                int share = rollouts <= 0 ? 0 : rollouts / workers + (w < rollouts % workers ? 1 : 0);
+                if (rollouts > 0 && share == 0)
+                    break;
+                tasks.add(new Worker(board, share, deadline, searchSeed + w));
+            }
+            try {
+                for (Future<Worker> future : pool.invokeAll(tasks))
+                    done.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Monte Carlo search interrupted", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Monte Carlo search failed", e.getCause());
+            }
+        }
+
+        long[] visits = new long[4];
+        double[] values = new double[4];
+        int depth = 0;
+        for (Worker worker : done) {
+            for (int direction = Bitboard2048.UP; direction <= Bitboard2048.RIGHT; direction++) {
+                int child = worker.children[direction];
+                if (child != 0) {
+                    visits[direction] += worker.visits[child];
+                    values[direction] += worker.values[child];
+                }
+            }
+            depth = Math.max(depth, worker.maxDepth);
+            stats.add(worker.nodes - 1, worker.iterations, 0, 0, worker.truncated);
+        }
+        // the most visited move, the best mean reward breaking ties
+        int bestDirection = -1;
+        for (int direction = Bitboard2048.UP; direction <= Bitboard2048.RIGHT; direction++) {
+            if (!Bitboard2048.canMove(board, direction))
+                continue;
+            if (bestDirection < 0 || visits[direction] > visits[bestDirection]
+                    || visits[direction] == visits[bestDirection]
+                    && values[direction] * visits[bestDirection] > values[bestDirection] * visits[direction])
+                bestDirection = direction;
+        }
+        stats.endSearch(depth);
+        return bestDirection;
+    }
+
+    /**
+     * One tree, grown from the root on one thread. Nodes are indices into
+     * flat arrays, node 0 being the root, and children[4 * node + direction]
+     * is 0 until that move has been tried.
+     */
+    private class Worker implements Callable<Worker> {
+        final long root;
+        final int budget;
+        final long deadline;
+        final Random random;
+        int[] children = new int[4 * 1024];
+        long[] visits = new long[1024];
+        double[] values = new double[1024];
+        int nodes = 1;
+        int[] path = new int[64];
+        final int[] legal = new int[4];
+        long iterations;
+        long truncated;
+        int maxDepth;
+
+        Worker(long root, int budget, long deadline, long seed) {
+            this.root = root;
+            this.budget = budget;
+            this.deadline = deadline;
+            this.random = new Random(seed);
+        }
+
+        @Override
+        public Worker call() {
+            while ((budget <= 0 || iterations < budget) && (deadline == 0 || System.nanoTime() < deadline)) {
+                iterate();
+                iterations++;
+            }
+            return this;
+        }
+
+        private void iterate() {
+            long board = root;
+            int node = 0;
+            int length = 0;
+            double reward = 0;
+            while (!Bitboard2048.isTerminal(board)) {
+                int direction = select(node, board);
+                int child = children[4 * node + direction];
+                boolean expand = child == 0;
+                if (expand) {
+                    child = newNode();
+                    children[4 * node + direction] = child;
+                }
+                reward += Bitboard2048.moveScore(board, direction);
+                board = Bitboard2048.spawnRandom(Bitboard2048.move(board, direction), random);
+                if (length == path.length)
+                    path = Arrays.copyOf(path, 2 * length);
+                path[length++] = child;
+                node = child;
+                if (expand)
+                    break;
+            }
+            maxDepth = Math.max(maxDepth, length);
+            reward += rollout(board);
+            visits[0]++;
+            values[0] += reward;
+            for (int i = 0; i < length; i++) {
+                visits[path[i]]++;
+                values[path[i]] += reward;
+            }
+        }
+
+        // an untried legal move if there is one, else the best UCB1 score
+        private int select(int node, long board) {
+            double logVisits = Math.log(visits[node]);
+            double scale = visits[node] > 0 ? values[node] / visits[node] : 0;
+            int best = -1;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for (int direction = Bitboard2048.UP; direction <= Bitboard2048.RIGHT; direction++) {
+                if (!Bitboard2048.canMove(board, direction))
+                    continue;
+                int child = children[4 * node + direction];
+                if (child == 0)
+                    return direction;
+                double score = values[child] / visits[child]
+                        + exploration * scale * Math.sqrt(logVisits / visits[child]);
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = direction;
+                }
+            }
+            return best;
+        }
+
+        private int newNode() {
+            if (nodes == visits.length) {
+                visits = Arrays.copyOf(visits, 2 * nodes);
+                values = Arrays.copyOf(values, 2 * nodes);
+                children = Arrays.copyOf(children, 8 * nodes);
+            }
+            return nodes++;
+        }
+
+        // the score of playing on to the end of the game, or rolloutDepth moves
+        private double rollout(long board) {
+            double score = 0;
+            for (int moves = 0; rolloutDepth <= 0 || moves < rolloutDepth; moves++) {
+                int direction;
+                if (rollout == Rollout.GREEDY) {
+                    direction = greedy(board);
+                } else {
+                    int count = 0;
+                    for (int d = Bitboard2048.UP; d <= Bitboard2048.RIGHT; d++)
+                        if (Bitboard2048.canMove(board, d))
+                            legal[count++] = d;
+                    direction = count == 0 ? -1 : legal[random.nextInt(count)];
+                }
+                if (direction < 0)
+                    return score;
+                score += Bitboard2048.moveScore(board, direction);
+                board = Bitboard2048.spawnRandom(Bitboard2048.move(board, direction), random);
+            }
+            truncated++;
+            return score;
+        }
+
+        private int greedy(long board) {
+            int best = -1;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for (int direction = Bitboard2048.UP; direction <= Bitboard2048.RIGHT; direction++) {
+                if (!Bitboard2048.canMove(board, direction))
+                    continue;
+                double score = evaluator.evaluate(Bitboard2048.move(board, direction));
+                if (best < 0 || score > bestScore) {
+                    bestScore = score;
+                    best = direction;
+                }
+            }
+            return best;
+        }
+    }
+}
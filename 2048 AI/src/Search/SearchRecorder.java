@@ -0,0 +1,20 @@
+package Search;
+
+/**
+ * Records the moves of SearchStats as JFR events. The implementation,
+ * JfrSearchRecorder, lives in the jfr module and uses jdk.jfr (JDK 11 and
+ * later); it is looked up at run time, so the game still builds and runs on
+ * Java 8 without it.
+ */
+interface SearchRecorder {
+
+    /**
+     * @return the event of the move starting now
+     */
+    Object begin();
+
+    /**
+     * Commit the event returned by begin() if a recording enables it.
+     */
+    void end(Object event, String engine, SearchStats.Snapshot move);
+}
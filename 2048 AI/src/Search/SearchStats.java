@@ -0,0 +1,208 @@
+package Search;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of a search engine: nodes expanded, leaf evaluations, cache hits
+ * and misses, cutoffs, and the depth and time of every move.
+ *
+ * Search threads count in plain fields of their own and add them here once
+ * per task, into LongAdders, so counting costs next to nothing and threads
+ * never contend on one counter. snapshot() gives the totals since the engine
+ * was created, getLastSearch() the counts of the last move alone. Every move
+ * is also committed as a "Search2048.Search" JFR event when a recording
+ * enables it and the jfr module is on the class path, so a running game can
+ * be watched with JDK Mission Control or jcmd JFR.start without a profiler.
+ */
+public final class SearchStats {
+    // null without the jfr module or on a JVM without jdk.jfr
+    private static final SearchRecorder RECORDER = loadRecorder();
+
+    private final String engine;
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder nodes = new LongAdder();
+    private final LongAdder evaluations = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LongAdder cutoffs = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+    private volatile int maxDepth;
+    private volatile Snapshot lastSearch = new Snapshot();
+
+    // the running search, one at a time per engine
+    private Snapshot searchStart;
+    private long searchStartNanos;
+    private Object event;
+
+    /**
+     * Counts at one point in time. For a single move, depth is the depth it
+     * reached; for totals, the deepest move so far.
+     */
+    public static final class Snapshot {
+        private final long searches;
+        private final long nodes;
+        private final long evaluations;
+        private final long cacheHits;
+        private final long cacheMisses;
+        private final long cutoffs;
+        private final long nanos;
+        private final int depth;
+
+        Snapshot() {
+            this(0, 0, 0, 0, 0, 0, 0, 0);
+        }
+
+        Snapshot(long searches, long nodes, long evaluations, long cacheHits, long cacheMisses,
+                 long cutoffs, long nanos, int depth) {
+            this.searches = searches;
+            this.nodes = nodes;
+            this.evaluations = evaluations;
+            this.cacheHits = cacheHits;
+            this.cacheMisses = cacheMisses;
+            this.cutoffs = cutoffs;
+            this.nanos = nanos;
+            this.depth = depth;
+        }
+
+        public long getSearches() {
+            return searches;
+        }
+
+        public long getNodes() {
+            return nodes;
+        }
+
+        public long getEvaluations() {
+            return evaluations;
+        }
+
+        public long getCacheHits() {
+            return cacheHits;
+        }
+
+        public long getCacheMisses() {
+            return cacheMisses;
+        }
+
+        public long getCutoffs() {
+            return cutoffs;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public int getDepth() {
+            return depth;
+        }
+
+        public double getNodesPerSecond() {
+            return nanos == 0 ? 0 : nodes * 1e9 / nanos;
+        }
+
+        /**
+         * @return the share of cache lookups that hit, 0 if there were none
+         */
+        public double getCacheHitRate() {
+            long lookups = cacheHits + cacheMisses;
+            return lookups == 0 ? 0 : (double) cacheHits / lookups;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d searches, %d nodes, %d evaluations, %d cutoffs, depth %d, "
+                            + "%.0f nodes/s, cache hit rate %.1f%%", searches, nodes, evaluations, cutoffs, depth,
+                    getNodesPerSecond(), 100 * getCacheHitRate());
+        }
+    }
+
+    public SearchStats(String engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Add the counts of one search task.
+     */
+    public void add(long nodes, long evaluations, long cacheHits, long cacheMisses, long cutoffs) {
+        if (nodes != 0)
+            this.nodes.add(nodes);
+        if (evaluations != 0)
+            this.evaluations.add(evaluations);
+        if (cacheHits != 0)
+            this.cacheHits.add(cacheHits);
+        if (cacheMisses != 0)
+            this.cacheMisses.add(cacheMisses);
+        if (cutoffs != 0)
+            this.cutoffs.add(cutoffs);
+    }
+
+    /**
+     * Called by the engine when it starts choosing a move.
+     */
+    void beginSearch() {
+        searchStart = snapshot();
+        searchStartNanos = System.nanoTime();
+        if (RECORDER != null)
+            event = RECORDER.begin();
+    }
+
+    /**
+     * Called by the engine once the move is chosen.
+     *
+     * @param depth the depth the search reached
+     */
+    void endSearch(int depth) {
+        long elapsed = System.nanoTime() - searchStartNanos;
+        searches.increment();
+        nanos.add(elapsed);
+        if (depth > maxDepth)
+            maxDepth = depth;
+        Snapshot now = snapshot();
+        Snapshot start = searchStart;
+        Snapshot last = new Snapshot(1, now.nodes - start.nodes, now.evaluations - start.evaluations,
+                now.cacheHits - start.cacheHits, now.cacheMisses - start.cacheMisses,
+                now.cutoffs - start.cutoffs, elapsed, depth);
+        lastSearch = last;
+        if (RECORDER != null) {
+            RECORDER.end(event, engine, last);
+            event = null;
+        }
+    }
+
+    /**
+     * @return the totals since the engine was created or reset
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(searches.sum(), nodes.sum(), evaluations.sum(), cacheHits.sum(),
+                cacheMisses.sum(), cutoffs.sum(), nanos.sum(), maxDepth);
+    }
+
+    /**
+     * @return the counts of the last move chosen
+     */
+    public Snapshot getLastSearch() {
+        return lastSearch;
+    }
+
+    public void reset() {
+        searches.reset();
+        nodes.reset();
+        evaluations.reset();
+        cacheHits.reset();
+        cacheMisses.reset();
+        cutoffs.reset();
+        nanos.reset();
+        maxDepth = 0;
+        lastSearch = new Snapshot();
+    }
+
+    private static SearchRecorder loadRecorder() {
+        try {
+            return (SearchRecorder) Class.forName("Search.JfrSearchRecorder")
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // no jfr module, or a JVM without jdk.jfr
+            return null;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package Search;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size, open-addressed transposition table keyed on a 64-bit board.
+ *
+ * Entries live in two parallel long arrays (key and data), grouped in
+ * buckets of four slots. The data word packs the score (as float bits),
+ * the remaining search depth, the best move, whether that subtree was
+ * searched completely and the age of the search that stored it. When a
+ * bucket is full, entries from older searches are replaced first, then the
+ * shallowest one.
+ *
+ * The table can be shared by several search threads without locking: the
+ * key slot holds key ^ data, so a slot torn by concurrent writes fails the
+ * key check and reads as a miss.
+ */
+public class TranspositionTable {
+    public static final int NO_MOVE = 0xF;
+
+    private static final int BUCKET = 4;
+    private static final int BYTES_PER_ENTRY = 16;
+    private static final long VALID = 1L << 63;
+    private static final long COMPLETE = 1L << 44;
+
+    private final long[] keys;
+    private final long[] data;
+    private final int mask;
+    private volatile int age;
+
+    public TranspositionTable(int megabytes) {
+        if (megabytes <= 0)
+            throw new IllegalArgumentException("Table size must be positive: " + megabytes);
+        long entries = Long.highestOneBit((long) megabytes * 1024 * 1024 / BYTES_PER_ENTRY);
+        int size = (int) Math.max(BUCKET, Math.min(entries, 1 << 30));
+        this.keys = new long[size];
+        this.data = new long[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Start a new search: entries stored before now become replaceable first.
+     */
+    public void newSearch() {
+        age = (age + 1) & 0xFF;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(data, 0);
+    }
+
+    public int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * @return the packed entry for the key, or 0 if it is not in the table
+     */
+    public long probe(long key) {
+        int bucket = index(key);
+        for (int i = bucket; i < bucket + BUCKET; i++) {
+            long entry = data[i];
+            if (entry != 0 && (keys[i] ^ entry) == key)
+                return entry;
+        }
+        return 0;
+    }
+
+    /**
+     * @param complete whether the score was searched to the full depth, with
+     *                 nothing cut off below it
+     */
+    public void store(long key, int depth, double score, int move, boolean complete) {
+        int age = this.age;
+        long entry = VALID
+                | (complete ? COMPLETE : 0)
+                | (long) (age & 0xFF) << 48
+                | (long) (move & 0xF) << 40
+                | (long) (depth & 0xFF) << 32
+                | (Float.floatToIntBits((float) score) & 0xFFFFFFFFL);
+
+        int bucket = index(key);
+        int victim = bucket;
+        int victimRank = Integer.MAX_VALUE;
+        for (int i = bucket; i < bucket + BUCKET; i++) {
+            long old = data[i];
+            if (old == 0 || (keys[i] ^ old) == key) {
+                victim = i;
+                break;
+            }
+            // an entry from an older search always loses against a current one
+            int rank = depthOf(old) + (ageOf(old) == age ? 256 : 0);
+            if (rank < victimRank) {
+                victimRank = rank;
+                victim = i;
+            }
+        }
+        keys[victim] = key ^ entry;
+        data[victim] = entry;
+    }
+
+    public static double scoreOf(long entry) {
+        return Float.intBitsToFloat((int) entry);
+    }
+
+    public static int depthOf(long entry) {
+        return (int) (entry >>> 32) & 0xFF;
+    }
+
+    public static int moveOf(long entry) {
+        return (int) (entry >>> 40) & 0xF;
+    }
+
+    public static boolean isComplete(long entry) {
+        return (entry & COMPLETE) != 0;
+    }
+
+    static int ageOf(long entry) {
+        return (int) (entry >>> 48) & 0xFF;
+    }
+
+    private int index(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask & ~(BUCKET - 1);
+    }
+}
@@ -0,0 +1,86 @@
+package Game2048;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Heuristic2048 over a batch of boards, one board per SIMD lane: the row
+ * and column indices of the boards are laid out lane by lane, every table
+ * is read with one gather per row index, and the terms are added in the
+ * same order as Heuristic2048.evaluate(long), so each lane gets exactly the
+ * scalar score. Won and lost boards are patched up afterwards, and the
+ * boards that do not fill a vector are scored one at a time.
+ *
+ * Loaded by Heuristic2048 through reflection; needs JDK 16 or later and
+ * --add-modules jdk.incubator.vector both to build and to run.
+ */
+final class VectorHeuristic2048 implements BatchKernel2048 {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+
+    // per thread: 8 index rows of LANES (4 rows, then 4 columns) and the max tiles
+    private static final ThreadLocal<int[]> INDICES = ThreadLocal.withInitial(() -> new int[8 * LANES]);
+    private static final ThreadLocal<double[]> MAX_TILES = ThreadLocal.withInitial(() -> new double[LANES]);
+
+    @Override
+    public void evaluate(Heuristic2048 heuristic, long[] boards, int count, double[] scores) {
+        int[] index = INDICES.get();
+        double[] maxTiles = MAX_TILES.get();
+        byte[] maxExponent = heuristic.maxExponent;
+        double[][] rowTerms = heuristic.rowTerms;
+        double[] columnTerms = heuristic.columnTerms;
+        double[] monoDecreasing = heuristic.monoDecreasing;
+        double[] monoIncreasing = heuristic.monoIncreasing;
+        int winTile = Bitboard2048.valueOf(heuristic.winExponent);
+
+        int i = 0;
+        for (; i + LANES <= count; i += LANES) {
+            for (int lane = 0; lane < LANES; lane++) {
+                long board = boards[i + lane];
+                long transposed = Bitboard2048.transpose(board);
+                int max = 0;
+                for (int k = 0; k < 4; k++) {
+                    int row = (int) (board >>> (16 * k)) & 0xFFFF;
+                    index[k * LANES + lane] = row;
+                    index[(4 + k) * LANES + lane] = (int) (transposed >>> (16 * k)) & 0xFFFF;
+                    max = Math.max(max, maxExponent[row]);
+                }
+                maxTiles[lane] = Bitboard2048.valueOf(max);
+            }
+
+            DoubleVector sum = gather(rowTerms[0], index, 0)
+                    .add(gather(rowTerms[1], index, 1))
+                    .add(gather(rowTerms[2], index, 2))
+                    .add(gather(rowTerms[3], index, 3))
+                    .add(gather(columnTerms, index, 4))
+                    .add(gather(columnTerms, index, 5))
+                    .add(gather(columnTerms, index, 6))
+                    .add(gather(columnTerms, index, 7));
+            DoubleVector decreasing = gather(monoDecreasing, index, 0)
+                    .add(gather(monoDecreasing, index, 1))
+                    .add(gather(monoDecreasing, index, 2))
+                    .add(gather(monoDecreasing, index, 3));
+            DoubleVector increasing = gather(monoIncreasing, index, 0)
+                    .add(gather(monoIncreasing, index, 1))
+                    .add(gather(monoIncreasing, index, 2))
+                    .add(gather(monoIncreasing, index, 3));
+            sum = sum.add(decreasing.max(increasing).mul(heuristic.monoWeight))
+                    .add(DoubleVector.fromArray(SPECIES, maxTiles, 0).mul(heuristic.maxWeight));
+            sum.intoArray(scores, i);
+
+            for (int lane = 0; lane < LANES; lane++) {
+                if (maxTiles[lane] >= winTile)
+                    scores[i + lane] = Double.MAX_VALUE;
+                else if (Bitboard2048.isTerminal(boards[i + lane]))
+                    scores[i + lane] = -Double.MAX_VALUE;
+            }
+        }
+        for (; i < count; i++)
+            scores[i] = heuristic.evaluate(boards[i]);
+    }
+
+    // table[index of row k] for every lane
+    private static DoubleVector gather(double[] table, int[] index, int k) {
+        return DoubleVector.fromArray(SPECIES, table, 0, index, k * LANES);
+    }
+}
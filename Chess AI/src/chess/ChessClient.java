@@ -75,7 +75,8 @@ public class ChessClient extends Application {
 		// Movemakers handle getting input from an AI, from the keyboard, or
 		// from a server, depending on which type is used.
 		moveMaker = new MoveMaker[2];
-		moveMaker[Chess.BLACK] = new AIMoveMaker(new MiniMaxAlphaBetaAI(5));
+		moveMaker[Chess.BLACK] = new AIMoveMaker(new MiniMaxAlphaBetaAI(5,
+				MiniMaxAlphaBetaAI.DEFAULT_TABLE_MEGABYTES, Runtime.getRuntime().availableProcessors()));
 		moveMaker[Chess.WHITE] = new TextFieldMoveMaker();
 		// moveMaker[Chess.WHITE] = new AIMoveMaker(new MiniMaxAlphaBetaAI(5));
 
@@ -4,31 +4,80 @@ import chesspresso.Chess;
 import chesspresso.move.IllegalMoveException;
 import chesspresso.position.Position;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Created by gejing on 2/7/16.
+ *
+ * With more than one thread the search is Lazy SMP: helper threads search
+ * the same root on their own copies of the position, at staggered depths
+ * and in a different root move order, and fill the shared transposition
+ * table. The main thread runs the usual iterative deepening, finds most of
+ * its positions in the table, and its move is played; the helpers are
+ * stopped as soon as it is done.
  */
 public class MiniMaxAlphaBetaAI implements ChessAI {
 
     // max search depth
     private int DEPTH;
     // AI player uses white or black?
-    private static int AI;
+    private int AI;
     // utility of win, lose and draw state
+    // lose is -win rather than Integer.MIN_VALUE so that negamax can negate it
     private static int WIN_UTILITY = Integer.MAX_VALUE;
-    private static int LOSE_UTILITY = Integer.MIN_VALUE;
+    private static int LOSE_UTILITY = -Integer.MAX_VALUE;
     private static int DRAW_UTILITY = 0;
     // a flag tells us if we could stop iterative deepening search
     private boolean stopSearch;
-    // record how many states we have visited (may contain duplicates if we don't have a check function)
-    private int visitedStates;
-    // record states we have visited
-    public HashMap<Long, Entry> table = new HashMap<>();
+    // record how many states we have visited (may contain duplicates if we don't have a check function), by all threads
+    private final LongAdder visitedStates = new LongAdder();
+    // default size of the transposition table in MB
+    public static final int DEFAULT_TABLE_MEGABYTES = 64;
+    // half width of the first aspiration window, doubled on every fail high or fail low
+    private static final int ASPIRATION_WINDOW = 50;
+    // states we have searched, kept between moves; scores are from the side to play
+    private final TranspositionTable table;
+    // number of threads searching, the main one included
+    private final int threads;
+    // runs the helper threads, null with a single thread
+    private final ExecutorService helpers;
+    // tells the helper threads that the main thread has its move
+    private volatile boolean stopHelpers;
+
+    private static final class SearchAborted extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        SearchAborted() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final SearchAborted ABORTED = new SearchAborted();
 
     public  MiniMaxAlphaBetaAI(int depth) {
+        this(depth, DEFAULT_TABLE_MEGABYTES);
+    }
+
+    public MiniMaxAlphaBetaAI(int depth, int tableMegabytes) {
+        this(depth, tableMegabytes, 1);
+    }
+
+    public MiniMaxAlphaBetaAI(int depth, int tableMegabytes, int threads) {
         // max depth in the search
         this.DEPTH = depth;
+        this.table = new TranspositionTable(tableMegabytes);
+        this.threads = Math.max(1, threads);
+        this.helpers = this.threads > 1 ? Executors.newFixedThreadPool(this.threads - 1, runnable -> {
+            Thread thread = new Thread(runnable, "chess search helper");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
     }
 
     public short getMove(Position ThisPosition) {
@@ -41,50 +90,137 @@ public class MiniMaxAlphaBetaAI implements ChessAI {
         Position position = new Position(ThisPosition);
         // indicates AI is black or white
         AI = position.getToPlay();
+        table.newSearch();
         // we will stop searching if we find that
         // 1. in a specific depth, the best move could guarantee a win
         // 2. in a specific depth, the best move will cause a lose (we will definitely lose)
         stopSearch = false;
+        stopHelpers = false;
+        List<Future<?>> running = new ArrayList<>();
+        for (int id = 1; id < threads; id++) {
+            final int helper = id;
+            final Position copy = new Position(position);
+            running.add(helpers.submit(() -> helperSearch(copy, helper)));
+        }
         short bestMove = 0;
-        // iterative deepening search
-        for(int i = 1; i <= DEPTH && !stopSearch; i++) {
-            visitedStates = 0;
-            bestMove = alphabetaSearch(position, i);
-            System.out.print("Search in depth " + i + "\n");
-            System.out.print("States visited is " + visitedStates + "\n");
-            System.out.print("The best move in this depth is " + bestMove + "\n");
+        try {
+            // iterative deepening search
+            for(int i = 1; i <= DEPTH && !stopSearch; i++) {
+                // the helpers keep counting, so the counter is read on both sides rather than reset
+                long visitedBefore = visitedStates.sum();
+                bestMove = alphabetaSearch(position, i, 0);
+                System.out.print("Search in depth " + i + "\n");
+                System.out.print("States visited is " + (visitedStates.sum() - visitedBefore)
+                        + (threads > 1 ? " (all " + threads + " threads, while this depth was searched)" : "") + "\n");
+                System.out.print("The best move in this depth is " + bestMove + "\n");
+            }
+        } finally {
+            stopHelpers = true;
+            // a helper must not touch the table once the next search has started
+            for (Future<?> future : running) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    e.getCause().printStackTrace();
+                }
+            }
         }
-        System.out.print("Table size after this search: " + table.size() + "\n");
+        System.out.print("Table usage after this search: " + table.usage() + " permille\n");
         System.out.print("The final move is: " + bestMove + "\n\n");
-        table.clear();
         return bestMove;
     }
 
+    /**
+     * Iterative deepening of a helper thread, odd helpers one ply ahead of
+     * the main thread, until the main thread has its move.
+     */
+    private void helperSearch(Position position, int helper) {
+        try {
+            for (int i = 1 + helper % 2; i <= DEPTH; i++)
+                alphabetaSearch(position, i, helper);
+        } catch (SearchAborted e) {
+            // the main thread is done, the position copy is dropped
+        }
+    }
+
     public short alphabetaSearch(Position position, int maxDepth) {
-        short[] moves = position.getAllMoves();
-        int maxVal = Integer.MIN_VALUE;
-        short bestMove = 0;
+        return alphabetaSearch(position, maxDepth, 0);
+    }
 
-        for (short move : moves) {
-            try {
-                position.doMove(move);
-            } catch (IllegalMoveException e) {
-                e.printStackTrace();
+    // helper is 0 for the main thread
+    private short alphabetaSearch(Position position, int maxDepth, int helper) {
+        long hashcode = position.getHashCode();
+        long entry = table.probe(hashcode);
+        // the best move of the previous iteration is searched first
+        short[] moves = orderMoves(position.getAllMoves(), entry);
+        // helpers take the other root moves in another order, so that threads spread over the tree
+        if (helper > 0 && moves.length > 2)
+            rotate(moves, 1, helper % (moves.length - 1));
+
+        // open with an aspiration window around the score of the previous iteration
+        int alpha = -WIN_UTILITY, beta = WIN_UTILITY;
+        int delta = ASPIRATION_WINDOW;
+        if (entry != 0 && TranspositionTable.boundOf(entry) == TranspositionTable.EXACT) {
+            int previous = TranspositionTable.scoreOf(entry);
+            if (previous != WIN_UTILITY && previous != LOSE_UTILITY) {
+                alpha = window(previous, -delta);
+                beta = window(previous, delta);
             }
+        }
+        int maxVal;
+        short bestMove;
+        while (true) {
+            maxVal = 0;
+            bestMove = 0;
+            int a = alpha;
+            for (short move : moves) {
+                try {
+                    position.doMove(move);
+                } catch (IllegalMoveException e) {
+                    e.printStackTrace();
+                }
 
-            // start from a minValue search
-            int temp = minValue(position, 1, maxDepth, Integer.MIN_VALUE, Integer.MAX_VALUE);
-            if (maxVal <= temp){
-                maxVal = temp;
-                bestMove = move;
-            }
+                int temp;
+                if (bestMove == 0) {
+                    temp = -negamax(position, 1, maxDepth, -beta, -a);
+                } else {
+                    // prove every other move worse with a null window, search it again if it is not
+                    temp = -negamax(position, 1, maxDepth, -a - 1, -a);
+                    if (temp > a && temp < beta)
+                        temp = -negamax(position, 1, maxDepth, -beta, -a);
+                }
+                if (bestMove == 0 || temp > maxVal) {
+                    maxVal = temp;
+                    bestMove = move;
+                }
 
-            position.undoMove();
+                position.undoMove();
+                if (maxVal >= beta)
+                    break;
+                a = Math.max(a, maxVal);
+            }
+            // inside the window the value is exact, else widen the failed side and search again
+            if (maxVal <= alpha && alpha > LOSE_UTILITY) {
+                table.store(hashcode, maxDepth, maxVal, TranspositionTable.UPPER, bestMove);
+                alpha = window(maxVal, -delta);
+            } else if (maxVal >= beta && beta < WIN_UTILITY) {
+                table.store(hashcode, maxDepth, maxVal, TranspositionTable.LOWER, bestMove);
+                beta = window(maxVal, delta);
+                // the move that failed high is searched first
+                orderMoves(moves, table.probe(hashcode));
+            } else {
+                break;
+            }
+            delta *= 2;
         }
 
+        table.store(hashcode, maxDepth, maxVal, TranspositionTable.EXACT, bestMove);
+
         // if we find that we will definitely win or definitely lose
         // then we know we don't need to search in a deeper depth
-        if((maxVal == WIN_UTILITY || maxVal == LOSE_UTILITY)) {
+        if(helper == 0 && (maxVal == WIN_UTILITY || maxVal == LOSE_UTILITY)) {
             stopSearch = true;
             System.out.print("Reach end in depth " + maxDepth + ". We will definitely " +
                     (maxVal == WIN_UTILITY ? "Win " : "Lose ") + "this game.\n");
@@ -93,82 +229,102 @@ public class MiniMaxAlphaBetaAI implements ChessAI {
         return bestMove;
     }
 
-    private int maxValue(Position position, int depth, int maxDepth, int a, int b) {
+    // score + offset, kept within the utilities
+    private static int window(int score, int offset) {
+        return (int) Math.max(LOSE_UTILITY, Math.min(WIN_UTILITY, (long) score + offset));
+    }
+
+    /**
+     * Principal variation search: the value of the position for the side to
+     * play, fail soft. The first move is searched with the full window and
+     * the others with a null window (alpha, alpha + 1), searched again only
+     * if they turn out better.
+     */
+    private int negamax(Position position, int depth, int maxDepth, int a, int b) {
         int alpha = a, beta = b;
-        visitedStates++;
-        if (cutoffTest(position, depth, maxDepth))
-            return utility(position);
-        int minVal = Integer.MIN_VALUE;
-        for (short move : position.getAllMoves()) {
+        if (stopHelpers)
+            throw ABORTED;
+        visitedStates.increment();
+        if (cutoffTest(position, depth, maxDepth)) {
+            int value = utility(position);
+            return AI == position.getToPlay() ? value : -value;
+        }
+        // use Transposition table
+        long hashcode = position.getHashCode();
+        long entry = table.probe(hashcode);
+        if (isCutoff(entry, maxDepth - depth, alpha, beta))
+            return TranspositionTable.scoreOf(entry);
+        int maxVal = 0;
+        short bestMove = 0;
+        for (short move : orderMoves(position.getAllMoves(), entry)) {
             try {
                 position.doMove(move);
-
-//                // use Transposition table
-//                Long hashcode = position.getHashCode();
-//                if(table.containsKey(hashcode)) {
-//                    if(table.get(hashcode).depth < depth) {
-//                        minVal = table.get(hashcode).value;
-//                    } else {
-//                        minVal = Math.max(minVal, minValue(position, depth + 1, maxDepth, alpha, beta));
-//                        table.get(hashcode).setEntry(minVal, depth);
-//                    }
-//                } else {
-//                    minVal = Math.max(minVal, minValue(position, depth + 1, maxDepth, alpha, beta));
-//                    table.put(position.getHashCode(), new Entry(minVal, depth));
-//                }
-
-                // do not use Transposition table
-                 minVal = Math.max(minVal, minValue(position, depth + 1, maxDepth, alpha, beta));
-                
+                int value;
+                if (bestMove == 0) {
+                    value = -negamax(position, depth + 1, maxDepth, -beta, -alpha);
+                } else {
+                    value = -negamax(position, depth + 1, maxDepth, -alpha - 1, -alpha);
+                    if (value > alpha && value < beta)
+                        value = -negamax(position, depth + 1, maxDepth, -beta, -alpha);
+                }
+                if (bestMove == 0 || value > maxVal) {
+                    maxVal = value;
+                    bestMove = move;
+                }
                 position.undoMove();
-                if(minVal >= beta)
-                    return minVal;
-                alpha = Math.max(minVal, alpha);
+                if(maxVal >= beta) {
+                    table.store(hashcode, maxDepth - depth, maxVal, TranspositionTable.LOWER, bestMove);
+                    return maxVal;
+                }
+                alpha = Math.max(maxVal, alpha);
             } catch (IllegalMoveException e) {
                 e.printStackTrace();
             }
         }
-        return minVal;
+        table.store(hashcode, maxDepth - depth, maxVal,
+                maxVal <= a ? TranspositionTable.UPPER : TranspositionTable.EXACT, bestMove);
+        return maxVal;
     }
 
-    private int minValue(Position position, int depth, int maxDepth, int a, int b) {
-        int alpha = a, beta = b;
-        visitedStates++;
-        if (cutoffTest(position, depth, maxDepth))
-            return utility(position);
-        int maxVal = Integer.MAX_VALUE;
-        for (short move : position.getAllMoves()) {
-            try{
-                position.doMove(move);
+    // whether a table entry searched at least as deep settles the value within (alpha, beta)
+    private static boolean isCutoff(long entry, int depth, int alpha, int beta) {
+        if (entry == 0 || TranspositionTable.depthOf(entry) < depth)
+            return false;
+        int score = TranspositionTable.scoreOf(entry);
+        switch (TranspositionTable.boundOf(entry)) {
+            case TranspositionTable.EXACT:
+                return true;
+            case TranspositionTable.LOWER:
+                return score >= beta;
+            case TranspositionTable.UPPER:
+                return score <= alpha;
+            default:
+                return false;
+        }
+    }
 
-                // use Transposition table
-//                Long hashcode = position.getHashCode();
-//                if(table.containsKey(hashcode)) {
-//                    if(table.get(hashcode).depth < depth) {
-//                        maxVal = table.get(hashcode).value;
-//                    } else {
-//                        maxVal = Math.min(maxVal, maxValue(position, depth + 1, maxDepth, alpha, beta));
-//                        table.get(hashcode).setEntry(maxVal, depth);
-//                    }
-//                } else {
-//                    maxVal = Math.min(maxVal, maxValue(position, depth + 1, maxDepth, alpha, beta));
-//                    table.put(position.getHashCode(), new Entry(maxVal, depth));
-//                }
-
-                // do not use Transposition table
-                 maxVal = Math.min(maxVal, maxValue(position, depth + 1, maxDepth, alpha, beta));
-                
-                position.undoMove();
-                // if max value is less than the lower bound, return it
-                if(maxVal <= alpha)
-                    return maxVal;
-                // if max value is less than the upper bound, change the upper bound to that value
-                beta = Math.min(beta, maxVal);
-            }catch (IllegalMoveException e){
-                e.printStackTrace();
+    // the moves, with the best move of the table entry first
+    private static short[] orderMoves(short[] moves, long entry) {
+        short first = entry == 0 ? 0 : TranspositionTable.moveOf(entry);
+        if (first != 0) {
+            for (int i = 1; i < moves.length; i++) {
+                if (moves[i] == first) {
+                    moves[i] = moves[0];
+                    moves[0] = first;
+                    break;
+                }
             }
         }
-        return maxVal;
+        return moves;
+    }
+
+    // rotate moves[from..] left by count
+    private static void rotate(short[] moves, int from, int count) {
+        for (int k = 0; k < count; k++) {
+            short first = moves[from];
+            System.arraycopy(moves, from + 1, moves, from, moves.length - from - 1);
+            moves[moves.length - 1] = first;
+        }
     }
 
     private boolean cutoffTest(Position position, int depth, int maxDepth) {
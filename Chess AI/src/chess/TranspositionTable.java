@@ -0,0 +1,136 @@
+package chess;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size transposition table over Position.getHashCode(), allocated
+ * once and kept from one move to the next.
+ *
+ * Every entry is two longs of one array: the full hash code XORed with the
+ * data word, and the data word packing the score, the best move, the
+ * remaining depth it was searched to, the bound type and the age of the
+ * search that stored it. The table is split into buckets of two entries:
+ * the first keeps the deepest result (unless it is from an older search),
+ * the second always takes the newest one.
+ *
+ * The table is shared by the threads of a parallel search without locks.
+ * Two threads writing the same slot at once can leave the key of one with
+ * the data of the other; the XOR makes such a torn entry fail the key check
+ * instead of handing out the data of another position.
+ */
+public class TranspositionTable {
+    // bound types, 0 marks an empty slot
+    public static final int EXACT = 1;
+    public static final int LOWER = 2;
+    public static final int UPPER = 3;
+
+    private static final int BYTES_PER_ENTRY = 16;
+    private static final int AGES = 64;
+
+    private final long[] entries;
+    // number of buckets - 1
+    private final int mask;
+    private volatile int age;
+
+    public TranspositionTable(int megabytes) {
+        if (megabytes <= 0)
+            throw new IllegalArgumentException("Table size must be positive: " + megabytes);
+        long buckets = Long.highestOneBit((long) megabytes * 1024 * 1024 / (2 * BYTES_PER_ENTRY));
+        int size = (int) Math.min(buckets, 1 << 26);
+        this.entries = new long[4 * size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Start a new search: entries stored before now are replaced first.
+     */
+    public void newSearch() {
+        age = (age + 1) % AGES;
+    }
+
+    public void clear() {
+        Arrays.fill(entries, 0);
+    }
+
+    /**
+     * @return the data word stored for the position, or 0 if there is none
+     */
+    public long probe(long key) {
+        int slot = bucket(key);
+        long data = entries[slot + 1];
+        if (data != 0 && (entries[slot] ^ data) == key)
+            return data;
+        data = entries[slot + 3];
+        if (data != 0 && (entries[slot + 2] ^ data) == key)
+            return data;
+        return 0;
+    }
+
+    /**
+     * @param depth the remaining depth the score was searched to
+     * @param bound EXACT, or LOWER (UPPER) if the search failed high (low)
+     */
+    public void store(long key, int depth, int score, int bound, short move) {
+        long data = (score & 0xFFFFFFFFL)
+                | (long) (move & 0xFFFF) << 32
+                | (long) Math.min(depth, 0xFF) << 48
+                | (long) bound << 56
+                | (long) age << 58;
+        int slot = bucket(key);
+        long deep = entries[slot + 1];
+        boolean same = deep != 0 && (entries[slot] ^ deep) == key;
+        // keep the best move of another search of the same position if this one has none
+        if (move == 0 && same)
+            data |= (long) (moveOf(deep) & 0xFFFF) << 32;
+        // an empty slot, a search as deep or an older entry takes the depth-preferred slot; a shallower
+        // result, even of the same position (a null window, a helper an iteration behind), does not replace a deeper one
+        if (deep == 0 || depth >= depthOf(deep) || ageOf(deep) != age) {
+            entries[slot] = key ^ data;
+            entries[slot + 1] = data;
+        } else {
+            entries[slot + 2] = key ^ data;
+            entries[slot + 3] = data;
+        }
+    }
+
+    /**
+     * @return how full the table is with entries of the current search, in
+     * permille, sampled on the first 1000 entries
+     */
+    public int usage() {
+        int used = 0;
+        int sampled = Math.min(1000, entries.length / 2);
+        for (int i = 0; i < sampled; i++) {
+            long data = entries[2 * i + 1];
+            if (data != 0 && ageOf(data) == age)
+                used++;
+        }
+        return used * 1000 / sampled;
+    }
+
+    public static int scoreOf(long data) {
+        return (int) data;
+    }
+
+    public static short moveOf(long data) {
+        return (short) (data >>> 32);
+    }
+
+    public static int depthOf(long data) {
+        return (int) (data >>> 48) & 0xFF;
+    }
+
+    public static int boundOf(long data) {
+        return (int) (data >>> 56) & 0x3;
+    }
+
+    static int ageOf(long data) {
+        return (int) (data >>> 58) & (AGES - 1);
+    }
+
+    // index of the first long of the key's bucket
+    private int bucket(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return ((int) (hash >>> 32) & mask) << 2;
+    }
+}